@@ -0,0 +1,47 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures batch classification of the training examples with a tree
+ * trained on them.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class ClassificationBenchmark {
+
+    /**
+     * Classifier trained on the workload once per trial.
+     */
+    @State(Scope.Benchmark)
+    public static class Trained {
+        Object classifier;
+
+        @Setup(Level.Trial)
+        public void setUp(Workload workload) throws Throwable {
+            classifier = Id3Internals.newClassifier();
+            Id3Internals.train(classifier, workload.data);
+        }
+    }
+
+
+    @Benchmark
+    public int[] predict(Trained trained, Workload workload) throws Throwable {
+        return Id3Internals.predict(trained.classifier, workload.examples);
+    }
+}
@@ -0,0 +1,88 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the scalar histogram kernel with the one on the Vector API:
+ * counting a chunk of keys with each, for tables of the workload's
+ * cardinality times its number of classes, and choosing the split at the
+ * root of the workload in a JVM without and with the jdk.incubator.vector
+ * module, which decides the kernel ID3 counts with. The vector benchmarks
+ * need a JDK on which Maven built VectorHistogram (17 or later).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g",
+        "--add-modules", "jdk.incubator.vector"})
+public class HistogramBenchmark {
+
+    /**
+     * A chunk of keys drawn uniformly from the cells of a table, and the
+     * two kernels.
+     */
+    @State(Scope.Benchmark)
+    public static class Keys {
+        byte[] keys;
+        int cells;
+        int[] histogram;
+        Object scalar;
+        Object vector;
+
+        @Setup(Level.Trial)
+        public void setUp(Workload workload) throws Throwable {
+            cells = workload.cardinality * workload.classes;
+            keys = new byte[Id3Internals.histogramRows()];
+            SplittableRandom random = new SplittableRandom(workload.seed);
+            for (int i = 0; i < keys.length; i++)
+                keys[i] = (byte) random.nextInt(cells);
+            histogram = new int[cells];
+            scalar = Id3Internals.histogramKernel("ID3$ScalarHistogram");
+            vector = Id3Internals.histogramKernel("VectorHistogram");
+        }
+    }
+
+
+    @Benchmark
+    public int[] scalarKernel(Keys keys) throws Throwable {
+        Id3Internals.count(keys.scalar, keys.keys, keys.cells,
+                keys.histogram);
+        return keys.histogram;
+    }
+
+    @Benchmark
+    public int[] vectorKernel(Keys keys) throws Throwable {
+        Id3Internals.count(keys.vector, keys.keys, keys.cells,
+                keys.histogram);
+        return keys.histogram;
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+    public int splitSelectionScalar(TrainingBenchmark.RootNode root)
+            throws Throwable {
+        return Id3Internals.nextQuestion(root.classifier, root.dataset,
+                root.workspace);
+    }
+
+    @Benchmark
+    public int splitSelectionVector(TrainingBenchmark.RootNode root)
+            throws Throwable {
+        return Id3Internals.nextQuestion(root.classifier, root.dataset,
+                root.workspace);
+    }
+}
@@ -0,0 +1,178 @@
+package benchmarks;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+
+/**
+ * Access to the package-private and private parts of ID3 that benchmarks
+ * measure in isolation. ID3 lives in the unnamed package, which cannot be
+ * imported from benchmarks (JMH refuses benchmarks in the unnamed package),
+ * so its members are resolved reflectively once, as method handles.
+ */
+final class Id3Internals {
+    private static final Class<?> ID3;
+    private static final MethodHandle NEW;
+    private static final MethodHandle TRAIN_DATA;
+    private static final MethodHandle TRAIN_FILE;
+    private static final MethodHandle PREDICT;
+    private static final MethodHandle SET_SAMPLED_SPLITS;
+    private static final MethodHandle PARSE_CSV;
+    private static final MethodHandle LOAD_CSV;
+    private static final MethodHandle INDEX_STRINGS;
+    private static final MethodHandle NEXT_QUESTION;
+    private static final MethodHandle NEW_DATASET;
+    private static final MethodHandle NEW_WORKSPACE;
+    private static final MethodHandle DATASET_SIZE;
+    private static final MethodHandle STRING_COUNT;
+    private static final MethodHandle COUNT_HISTOGRAM;
+    private static final int HISTOGRAM_ROWS;
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            ID3 = Class.forName("ID3");
+            Class<?> dataset = Class.forName("ID3$Dataset");
+
+            NEW = lookup.unreflectConstructor(open(ID3.getDeclaredConstructor()));
+            TRAIN_DATA = lookup.unreflect(open(
+                    ID3.getDeclaredMethod("train", String[][].class)));
+            TRAIN_FILE = lookup.unreflect(open(
+                    ID3.getDeclaredMethod("train", String.class)));
+            PREDICT = lookup.unreflect(open(
+                    ID3.getDeclaredMethod("predict", String[][].class)));
+            SET_SAMPLED_SPLITS = lookup.unreflect(open(ID3.getDeclaredMethod(
+                    "setSampledSplits", int.class, double.class)));
+            PARSE_CSV = lookup.unreflect(open(
+                    ID3.getDeclaredMethod("parseCSV", String.class)));
+            LOAD_CSV = lookup.unreflect(open(
+                    ID3.getDeclaredMethod("loadCSV", String.class)));
+            INDEX_STRINGS = lookup.unreflect(open(
+                    ID3.getDeclaredMethod("indexStrings", String[][].class)));
+            Class<?> workspace = Class.forName("ID3$Workspace");
+            NEXT_QUESTION = lookup.unreflect(open(ID3.getDeclaredMethod(
+                    "nextQuestion", dataset, int.class, int.class, workspace,
+                    int.class)));
+            NEW_WORKSPACE = lookup.unreflectConstructor(open(
+                    workspace.getDeclaredConstructor(
+                            dataset, int[].class, int.class)));
+            DATASET_SIZE = lookup.unreflect(open(
+                    dataset.getDeclaredMethod("size")));
+
+            Class<?> columns = Array.newInstance(
+                    Class.forName("ID3$Column"), 0).getClass();
+            Constructor<?> constructor = dataset.getDeclaredConstructor(
+                    columns, int[].class);
+            NEW_DATASET = lookup.unreflectConstructor(open(constructor));
+            STRING_COUNT = lookup.unreflectGetter(open(
+                    ID3.getDeclaredField("stringCount")));
+
+            Class<?> kernel = Class.forName("ID3$HistogramKernel");
+            COUNT_HISTOGRAM = lookup.unreflect(open(kernel.getDeclaredMethod(
+                    "count", byte[].class, int.class, int.class, int[].class,
+                    int.class)));
+            HISTOGRAM_ROWS = open(ID3.getDeclaredField("HISTOGRAM_ROWS"))
+                    .getInt(null);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private Id3Internals() {
+    }
+
+
+    static Object newClassifier() throws Throwable {
+        return NEW.invoke();
+    }
+
+    static void train(Object classifier, String[][] data) throws Throwable {
+        TRAIN_DATA.invoke(classifier, data);
+    }
+
+    static void train(Object classifier, String file) throws Throwable {
+        TRAIN_FILE.invoke(classifier, file);
+    }
+
+    static int[] predict(Object classifier, String[][] examples)
+            throws Throwable {
+        return (int[]) PREDICT.invoke(classifier, examples);
+    }
+
+    static void setSampledSplits(Object classifier, int sampleRows,
+                                 double delta) throws Throwable {
+        SET_SAMPLED_SPLITS.invoke(classifier, sampleRows, delta);
+    }
+
+    static String[][] parseCSV(String file) throws Throwable {
+        return (String[][]) PARSE_CSV.invoke(file);
+    }
+
+    static Object loadCSV(Object classifier, String file) throws Throwable {
+        return LOAD_CSV.invoke(classifier, file);
+    }
+
+    static Object indexStrings(Object classifier, String[][] data)
+            throws Throwable {
+        return INDEX_STRINGS.invoke(classifier, data);
+    }
+
+    /**
+     * Returns the Dataset spanning all of the given training data, indexing
+     * its strings with the given classifier.
+     */
+    static Object dataset(Object classifier, String[][] data)
+            throws Throwable {
+        Object columns = indexStrings(classifier, data);
+        return NEW_DATASET.invoke(columns, STRING_COUNT.invoke(classifier));
+    }
+
+    /**
+     * Returns a Workspace for choosing the split at the root of a dataset,
+     * with every attribute left to test.
+     */
+    static Object workspace(Object dataset, int attributes) throws Throwable {
+        int[] candidates = new int[attributes];
+        for (int i = 0; i < attributes; i++)
+            candidates[i] = i;
+        return NEW_WORKSPACE.invoke(dataset, candidates, 0);
+    }
+
+    static int nextQuestion(Object classifier, Object dataset,
+                            Object workspace) throws Throwable {
+        int size = (int) DATASET_SIZE.invoke(dataset);
+        return (int) NEXT_QUESTION.invoke(classifier, dataset, 0, size,
+                workspace, 0);
+    }
+
+    static int histogramRows() {
+        return HISTOGRAM_ROWS;
+    }
+
+    /**
+     * Returns a new instance of the named ID3.HistogramKernel class.
+     */
+    static Object histogramKernel(String className) throws Throwable {
+        return open(Class.forName(className).getDeclaredConstructor())
+                .newInstance();
+    }
+
+    /**
+     * Counts all of the given keys into a histogram with the given kernel.
+     */
+    static void count(Object kernel, byte[] keys, int cells, int[] histogram)
+            throws Throwable {
+        COUNT_HISTOGRAM.invoke(kernel, keys, keys.length, cells, histogram,
+                0);
+    }
+
+    /**
+     * HELPER: suppresses access checks on a reflected member.
+     */
+    private static <T extends AccessibleObject> T open(T member) {
+        member.setAccessible(true);
+        return member;
+    }
+}
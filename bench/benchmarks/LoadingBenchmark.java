@@ -0,0 +1,41 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures reading training data: parsing a CSV file into Strings, loading
+ * it directly into encoded columns, and indexing the labels of data that
+ * has already been parsed.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class LoadingBenchmark {
+
+    @Benchmark
+    public Object parseCSV(Workload workload) throws Throwable {
+        return Id3Internals.parseCSV(workload.file);
+    }
+
+    @Benchmark
+    public Object loadCSV(Workload workload) throws Throwable {
+        return Id3Internals.loadCSV(Id3Internals.newClassifier(),
+                workload.file);
+    }
+
+    @Benchmark
+    public Object indexStrings(Workload workload) throws Throwable {
+        return Id3Internals.indexStrings(Id3Internals.newClassifier(),
+                workload.data);
+    }
+}
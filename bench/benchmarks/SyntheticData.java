@@ -0,0 +1,105 @@
+package benchmarks;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+/**
+ * Generates categorical datasets in the layout parseCSV() produces: a header
+ * line followed by one line per example, with the class in the last column.
+ * <p>
+ * Attribute values are drawn uniformly from the given cardinality. The class
+ * of an example is a fixed function of its first three attributes, replaced
+ * by a uniformly random class with probability noise, so that trees learnt
+ * from the data have a realistic mix of informative and useless attributes.
+ * Generation is deterministic for a given seed.
+ */
+public final class SyntheticData {
+
+    private SyntheticData() {
+    }
+
+
+    /**
+     * Generates a labelled dataset.
+     *
+     * @param rows        number of examples
+     * @param attributes  number of attributes, excluding the class
+     * @param cardinality number of distinct values of each attribute
+     * @param classes     number of distinct classes
+     * @param noise       probability of an example having a random class
+     * @param seed        random seed
+     * @return dataset indexed as [example][attribute], with a header line
+     */
+    public static String[][] generate(int rows, int attributes, int cardinality,
+                                      int classes, double noise, long seed) {
+        Random random = new Random(seed);
+        String[][] data = new String[rows + 1][attributes + 1];
+
+        for (int attr = 0; attr < attributes; attr++)
+            data[0][attr] = "a" + attr;
+        data[0][attributes] = "class";
+
+        int[] codes = new int[attributes];
+        for (int row = 1; row <= rows; row++) {
+            for (int attr = 0; attr < attributes; attr++) {
+                codes[attr] = random.nextInt(cardinality);
+                data[row][attr] = "a" + attr + "v" + codes[attr];
+            }
+
+            int cls = random.nextDouble() < noise
+                    ? random.nextInt(classes)
+                    : rule(codes, classes);
+            data[row][attributes] = "c" + cls;
+        }
+
+        return data;
+    }
+
+    /**
+     * Returns the examples of a dataset without their classes, and without
+     * the header line, as accepted by ID3.predict().
+     *
+     * @param data dataset with a header line, class in last column
+     * @return unlabelled examples
+     */
+    public static String[][] unlabelled(String[][] data) {
+        String[][] examples = new String[data.length - 1][];
+        for (int row = 1; row < data.length; row++) {
+            examples[row - 1] = new String[data[row].length - 1];
+            System.arraycopy(data[row], 0, examples[row - 1], 0,
+                    examples[row - 1].length);
+        }
+        return examples;
+    }
+
+    /**
+     * Writes a dataset to a CSV file.
+     *
+     * @param data dataset indexed as [line][field]
+     * @param file file to write
+     * @throws IOException if the file cannot be written
+     */
+    public static void write(String[][] data, Path file) throws IOException {
+        try (BufferedWriter out =
+                     Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            for (String[] line : data) {
+                out.write(String.join(",", line));
+                out.write('\n');
+            }
+        }
+    }
+
+    /**
+     * HELPER: the noiseless class of an example.
+     */
+    private static int rule(int[] codes, int classes) {
+        int sum = 0;
+        for (int attr = 0; attr < Math.min(3, codes.length); attr++)
+            sum = sum * 7 + codes[attr];
+        return sum % classes;
+    }
+}
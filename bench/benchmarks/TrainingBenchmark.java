@@ -0,0 +1,75 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures tree induction: choosing the split at the root node, and full
+ * training from parsed data and from a CSV file, with split selection
+ * exact or from samples of large nodes.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class TrainingBenchmark {
+
+    /**
+     * Root node of the workload, encoded once per trial.
+     */
+    @State(Scope.Benchmark)
+    public static class RootNode {
+        Object classifier;
+        Object dataset;
+        Object workspace;
+
+        @Setup(Level.Trial)
+        public void setUp(Workload workload) throws Throwable {
+            classifier = Id3Internals.newClassifier();
+            dataset = Id3Internals.dataset(classifier, workload.data);
+            workspace = Id3Internals.workspace(dataset,
+                    workload.data[0].length - 1);
+        }
+    }
+
+
+    @Benchmark
+    public int splitSelection(RootNode root) throws Throwable {
+        return Id3Internals.nextQuestion(root.classifier, root.dataset,
+                root.workspace);
+    }
+
+    @Benchmark
+    public Object train(Workload workload) throws Throwable {
+        Object classifier = Id3Internals.newClassifier();
+        Id3Internals.train(classifier, workload.data);
+        return classifier;
+    }
+
+    @Benchmark
+    public Object trainSampled(Workload workload) throws Throwable {
+        Object classifier = Id3Internals.newClassifier();
+        Id3Internals.setSampledSplits(classifier, 1000, 1e-6);
+        Id3Internals.train(classifier, workload.data);
+        return classifier;
+    }
+
+    @Benchmark
+    public Object trainFromFile(Workload workload) throws Throwable {
+        Object classifier = Id3Internals.newClassifier();
+        Id3Internals.train(classifier, workload.file);
+        return classifier;
+    }
+}
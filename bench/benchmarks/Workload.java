@@ -0,0 +1,76 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Training data shared by the benchmarks. With dataset set to "synthetic"
+ * the data is generated by SyntheticData from the remaining parameters;
+ * any other value names one of the fixtures in data/ (e.g. "realEstate"),
+ * in which case the synthetic parameters are ignored.
+ * <p>
+ * The data is available both as a String[][] and as a CSV file, so that
+ * loading and training can be measured from either.
+ */
+@State(Scope.Benchmark)
+public class Workload {
+    @Param({"synthetic"})
+    public String dataset;
+
+    @Param({"100000"})
+    public int rows;
+
+    @Param({"20"})
+    public int attributes;
+
+    @Param({"8"})
+    public int cardinality;
+
+    @Param({"3"})
+    public int classes;
+
+    @Param({"0.1"})
+    public double noise;
+
+    @Param({"42"})
+    public long seed;
+
+    /** Training data with header line, indexed as [example][attribute]. */
+    public String[][] data;
+    /** Training examples without header line or class. */
+    public String[][] examples;
+    /** CSV file holding the training data. */
+    public String file;
+
+    private Path generated;
+
+
+    @Setup(Level.Trial)
+    public void setUp() throws Throwable {
+        if (dataset.equals("synthetic")) {
+            data = SyntheticData.generate(rows, attributes, cardinality,
+                    classes, noise, seed);
+            generated = Files.createTempFile("id3-bench", ".csv");
+            SyntheticData.write(data, generated);
+            file = generated.toString();
+        } else {
+            file = Paths.get("data", dataset + "Train.csv").toString();
+            data = Id3Internals.parseCSV(file);
+        }
+        examples = SyntheticData.unlabelled(data);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        if (generated != null) Files.delete(generated);
+    }
+}
@@ -1,24 +1,103 @@
 // ECS629/759 Assignment 2 - ID3 Skeleton Code
 // Author: Simon Dixon
 
-import java.io.File;
-import java.io.FileReader;
-import java.io.BufferedReader;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
+import java.util.zip.CRC32C;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
 
 
 class ID3 {
     static final double LOG2 = Math.log(2.0);
+    static final int MODEL_MAGIC = 0x4944334D;  // "ID3M"
+    static final int MODEL_VERSION = 1;
+    static final int CACHE_MAGIC = 0x49443343;  // "ID3C"
+    static final int CACHE_VERSION = 2;
+    static final double GAIN_TOLERANCE = 1e-6;
+    static final int VOTE_BATCH = 1024;
+    static final int HISTOGRAM_ROWS = 4096;     // Chunk of a kernel's keys
+    static final int HISTOGRAM_CELLS = 64;      // Largest table it counts
+    static final int ENTROPY_TABLE_SIZE = 1 << 16;
+    static final int BUFFER_SHIFT = 30;         // 1 GB per column buffer
     private int attributes;             // attribute number (including class)
     private int examples;               // Number of training examples
     private TreeNode decisionTree;      // Tree learnt in training
+    private CompiledTree compiledTree;  // Flattened tree used for scoring
     private String[][] data;            // data indexed as [example, attribute]
+    private String[] names;             // Attribute names, from the header
     private String[][] labels;          // Unique labels for each attribute
     private int[] stringCount;          // Number of unique labels
+    private ForkJoinPool indexPool;     // Pool for parallel indexing
+    private ForkJoinPool splitPool;     // Pool for parallel split search
+    private int splitThreshold;         // Smallest node searched in parallel
+    private ForkJoinPool growthPool;    // Pool for parallel subtree growth
+    private int growthThreshold;        // Smallest node grown in parallel
+    private int growthDepth;            // Depth below which growth is inline
+    private long countBudget;           // Counts held by out-of-core passes
+    private boolean incremental;        // Keep counts for update()
+    private Dataset history;            // Examples kept for update()
+    private double[] nLogN;             // n log2 n table, null if shared
+    private Listener listener;          // Receives figures of the work done
+    private TrainingStats trainingStats; // Figures of the training run
+    private int ensembleSize;           // Trees to bag, 0 for a single tree
+    private int ensembleFeatures;       // Attributes drawn per node
+    private long ensembleSeed;          // Seed of the bootstrap samples
+    private ForkJoinPool ensemblePool;  // Pool for trees and votes
+    private TreeNode[] ensemble;        // Bagged trees, or null
+    private CompiledTree[] compiledEnsemble; // Flattened bagged trees
+    private int maxDepth;               // Deepest split, 0 for no limit
+    private int minSplitRows;           // Fewest examples of a split node
+    private double minGain;             // Least gain of a split
+    private int maxNodes;               // Most nodes of a tree, 0 for any
+    private long timeLimit;             // Longest training run, in ns
+    private int sampleRows;             // First sample of a node, 0 for none
+    private double sampleDelta;         // Chance a sampled split is wrong
+    private Path columnCache;           // Directory of encoded CSV files
+    private boolean offHeap;            // Train on off-heap copies
 
 
     /**
@@ -28,14 +107,45 @@ class ID3 {
         attributes = 0;
         examples = 0;
         decisionTree = null;
+        compiledTree = null;
         data = null;
+        names = null;
         labels = null;
         stringCount = null;
+        indexPool = null;
+        splitPool = null;
+        splitThreshold = 0;
+        growthPool = null;
+        growthThreshold = 0;
+        growthDepth = 0;
+        countBudget = 1 << 26;
+        incremental = false;
+        history = null;
+        nLogN = null;
+        listener = null;
+        trainingStats = null;
+        ensembleSize = 0;
+        ensembleFeatures = 0;
+        ensembleSeed = 0;
+        ensemblePool = null;
+        ensemble = null;
+        compiledEnsemble = null;
+        maxDepth = 0;
+        minSplitRows = 0;
+        minGain = 0;
+        maxNodes = 0;
+        timeLimit = 0;
+        sampleRows = 0;
+        sampleDelta = 0;
+        columnCache = null;
+        offHeap = false;
     }
 
 
     /**
-     * Application entry point for classifier testing.
+     * Application entry point for classifier testing. The training file is
+     * encoded through a column cache in the directory named by the system
+     * property id3.cache, if set.
      *
      * @param args file names for training and test data
      * @throws FileNotFoundException if file not found
@@ -46,13 +156,12 @@ class ID3 {
         if (args.length != 2)
             error("Expected 2 arguments: file names of training and test data");
 
-        String[][] trainingData = parseCSV(args[0]);
-        String[][] testData = parseCSV(args[1]);
-
         ID3 classifier = new ID3();
-        classifier.train(trainingData);
+        String cache = System.getProperty("id3.cache");
+        if (cache != null) classifier.setColumnCache(cache);
+        classifier.train(args[0]);
         classifier.printTree();
-        classifier.classify(testData);
+        classifier.classify(args[1]);
     }
 
 
@@ -63,22 +172,111 @@ class ID3 {
      * @param trainingData dataset for tree construction
      */
     public void train(String[][] trainingData) {
-        indexStrings(trainingData);
-
-        // after calling indexStrings(), trainingData[][] is converted to a
-        // Dataset object which abstracts array manipulations in order to make
-        // the code directly implementing ID3 more legible
-        decisionTree = id3(
-                new Dataset(data, labels),
-                IntStream.range(0, labels.length - 1)
-                        .boxed()
-                        .collect(Collectors.toList())
-        );
+        // indexStrings() encodes trainingData[][] into columns, which are
+        // wrapped in a Dataset object which abstracts array manipulations in
+        // order to make the code directly implementing ID3 more legible
+        train(new Dataset(indexStrings(trainingData), stringCount));
+    }
+
+    /**
+     * Carry out construction of the decision tree based on the examples in
+     * the given CSV file. The file is read in a single pass, encoding values
+     * as they are read, so the training data is never held as Strings.
+     *
+     * @param fileName CSV file with a header line, class in last column
+     * @throws IOException if the file cannot be read, or a line has the
+     *                     wrong number of fields
+     */
+    public void train(String fileName) throws IOException {
+        train(loadCSV(fileName));
+    }
+
+    /**
+     * Carry out construction of the decision tree based on the examples in
+     * the given CSV file, without holding the examples in memory, so that
+     * the training set can be larger than the heap.
+     * <p>
+     * The file is first encoded into a compact row file in workDirectory.
+     * The tree is then grown breadth-first, one level per pass over the row
+     * file: each pass routes every example to its node in the new level,
+     * recording the assignments in a side file, and counts the class
+     * frequencies of every node of the level, from which the splits are
+     * chosen exactly as id3() would choose them. The learnt tree is the same
+     * as the one learnt in memory. Only the labels and the counts of one
+     * level are held in memory; levels whose counts exceed the budget set by
+     * setOutOfCoreBudget() are counted in several passes.
+     *
+     * @param fileName      CSV file with a header line, class in last column
+     * @param workDirectory directory for the temporary row and node files
+     * @throws IOException if a file cannot be read or written
+     */
+    public void trainOutOfCore(String fileName, String workDirectory)
+            throws IOException {
+        Path directory = Paths.get(workDirectory);
+        Path rows = Files.createTempFile(directory, "id3-rows", ".bin");
+        TrainingEvent event = new TrainingEvent();
+        event.begin();
+
+        try {
+            try (CodeOutput out = new CodeOutput(rows)) {
+                encodeCSV(fileName, (column, code) -> out.write(code));
+            }
+            trainingStats = newTrainingStats(event, examples - 1);
+            try (LevelScan scan = new LevelScan(rows, directory, stringCount)) {
+                decisionTree = growByLevel(scan);
+            }
+            compiledTree = compile(decisionTree);
+            ensemble = null;
+            compiledEnsemble = null;
+            report(event);
+        } finally {
+            Files.deleteIfExists(rows);
+        }
+    }
+
+    /**
+     * Carry out construction of the decision tree based on the examples in
+     * the given CSV file, held by TrainingWorker processes rather than by
+     * this one, so that the memory and cores of several hosts go into one
+     * tree. The file is read and encoded here in a single pass, and its
+     * examples are dealt to the workers in turn, each keeping its share.
+     * The tree is then grown breadth-first as trainOutOfCore() grows it:
+     * every worker counts the class frequencies of the nodes of a level
+     * over its own examples, concurrently with the others, and the counts
+     * are added up here, where the splits are chosen and sent to the
+     * workers with the request for the next level. The learnt tree is the
+     * same as the one learnt in memory. Only the labels and the counts of
+     * one level are held here; levels whose counts exceed the budget set by
+     * setOutOfCoreBudget() are counted in several requests.
+     *
+     * @param fileName CSV file with a header line, class in last column
+     * @param workers  addresses of the workers to hold the examples
+     * @throws IOException if the file cannot be read or a worker fails
+     */
+    public void trainDistributed(String fileName,
+                                 List<InetSocketAddress> workers)
+            throws IOException {
+        if (workers.isEmpty())
+            throw new IllegalArgumentException("No workers to train on");
+        TrainingEvent event = new TrainingEvent();
+        event.begin();
+
+        try (RemoteCounter counter = new RemoteCounter(workers)) {
+            encodeCSV(fileName, counter::add);
+            counter.start(stringCount);
+            trainingStats = newTrainingStats(event, examples - 1);
+            decisionTree = growByLevel(counter);
+        }
+        compiledTree = compile(decisionTree);
+        ensemble = null;
+        compiledEnsemble = null;
+        report(event);
     }
 
     /**
      * Output a classification result for each data point in the testData[][]
-     * matrix.
+     * matrix, or an empty line for a data point with an attribute value not
+     * seen in training.
      *
      * @param testData 2D array of data points, indexed as [example][attribute]
      */
@@ -86,547 +284,5199 @@ class ID3 {
         if (decisionTree == null)
             error("Please run training phase before classification");
 
+        ClassificationEvent event = new ClassificationEvent();
+        event.begin();
+        long start = listener == null ? 0 : System.nanoTime();
+
         String[] classes = labels[attributes - 1];
-        for (int i = 1; i < testData.length; i++)
-            System.out.println(classes[classify(testData[i], decisionTree)]);
+        int[] votes = new int[classes.length];
+        int[] codes = new int[attributes - 1];
+        PrintWriter out = new PrintWriter(new BufferedWriter(
+                new OutputStreamWriter(System.out)));
+        for (int i = 1; i < testData.length; i++) {
+            int cls = classify(testData[i], votes, codes);
+            out.println(cls < 0 ? "" : classes[cls]);
+        }
+        out.flush();
+        report(event, start, testData.length - 1);
     }
 
     /**
-     * Prints the learned decision tree to standard output.
+     * Output a classification result for each data point in the given CSV
+     * file, reading and classifying one line at a time, or an empty line
+     * for a data point with an attribute value not seen in training.
+     *
+     * @param fileName CSV file with a header line
+     * @throws IOException if the file cannot be read, or a line has the
+     *                     wrong number of fields
      */
-    public void printTree() {
-        if (decisionTree == null) error("Attempted to print null Tree");
-        else System.out.println(decisionTree);
-    }
+    public void classify(String fileName) throws IOException {
+        if (decisionTree == null)
+            error("Please run training phase before classification");
+
+        ClassificationEvent event = new ClassificationEvent();
+        event.begin();
+        long start = listener == null ? 0 : System.nanoTime();
+        int count = 0;
+
+        String[] classes = labels[attributes - 1];
+        int[] votes = new int[classes.length];
+        int[] codes = new int[attributes - 1];
+        PrintWriter out = new PrintWriter(new BufferedWriter(
+                new OutputStreamWriter(System.out)));
+        try (CsvReader reader = new CsvReader(fileName)) {
+            if (!reader.next()) error("Missing header in " + fileName);
+
+            String[] example = new String[reader.fields()];
+            while (reader.next()) {
+                reader.expect(example.length);
+                for (int f = 0; f < example.length; f++)
+                    example[f] = reader.field(f);
 
+                int cls = classify(example, votes, codes);
+                out.println(cls < 0 ? "" : classes[cls]);
+                count++;
+            }
+        }
+        out.flush();
+        report(event, start, count);
+    }
 
     /**
-     * Recursively computes a class for the given example by traversing the
-     * decision tree.
+     * Classifies a batch of data points, returning the index of the class
+     * of each in the class labels. Unlike classify(String[][]), the batch
+     * holds data points only, without a header line.
      *
-     * @param example data point to classify
-     * @param node    node from which to classify, pass root for initial call
-     * @return class of data point
+     * @param examples data points, indexed as [example][attribute]
+     * @return class index of each data point, or -1 for data points with an
+     * attribute value not seen in training
      */
-    private int classify(String[] example, TreeNode node) {
-        // leaf node
-        if (node.children == null || node.children.length == 0)
-            return node.value;
-        // inner node
+    public int[] predict(String[][] examples) {
+        if (compiledTree == null)
+            throw new IllegalStateException("Classifier not trained");
+
+        ClassificationEvent event = new ClassificationEvent();
+        event.begin();
+        long start = listener == null ? 0 : System.nanoTime();
+
+        int[] classes = new int[examples.length];
+        Vote vote = new Vote(examples, classes, 0, examples.length);
+        if (compiledEnsemble != null && ensemblePool != null)
+            invoke(ensemblePool, vote);
         else
-            return classify(
-                    example,
-                    node.children[indexOf(example[node.value], labels[node.value])]
-            );
+            vote.compute();
+
+        report(event, start, examples.length);
+        return classes;
     }
 
     /**
-     * Executes the iterative dichotomizer 3 algorithm on the training dataset.
-     * Returns root node of the resulting decision tree. The attributeIndices
-     * parameter is used to indicate which attributes are still to be tested at
-     * the current sub-tree.
-     * <p>
-     * That is, for example, if the data set originally had
-     * 4 distinct attributes, and attribute 3 has been used, the argument
-     * to attributeIndices should be [0, 1, 2].
-     *
-     * @param dataset          data points to elicit nodes for
-     * @param attributeIndices remaining attributes for splitting
-     * @return TreeNode representing decision tree
+     * HELPER: classifies one data point with the tree, or by majority vote
+     * of the bagged trees, counting votes in votes[] and encoding the data
+     * point in codes[]. Trees meeting a value they have not seen abstain,
+     * and ties go to the first class. Returns -1 if no tree can classify
+     * the data point.
      */
-    private TreeNode id3(Dataset dataset, List<Integer> attributeIndices) {
-        // all examples have same class
-        if (dataset.isPerfectlyClassified()) {
-            return new TreeNode(null, dataset.firstClass());
+    private int classify(String[] example, int[] votes, int[] codes) {
+        if (compiledEnsemble == null) return compiledTree.classify(example);
+
+        // the trees share the labels of one dataset, so the values of the
+        // data point are looked up once rather than by each tree
+        compiledEnsemble[0].encode(example, codes);
+        Arrays.fill(votes, 0);
+        for (CompiledTree tree : compiledEnsemble) {
+            int cls = tree.classify(codes);
+            if (cls >= 0) votes[cls]++;
         }
-        // no more attributes to split by
-        else if (attributeIndices.isEmpty()) {
-            return new TreeNode(null, dataset.majorityClass());
+
+        int majorityClass = -1;
+        int highestSoFar = 0;
+        for (int c = 0; c < votes.length; c++) {
+            if (votes[c] > highestSoFar) {
+                majorityClass = c;
+                highestSoFar = votes[c];
+            }
         }
-        // else split by best attribute and handle subsets (including empty)
-        else {
-            int question = nextQuestion(dataset, attributeIndices);
+        return majorityClass;
+    }
 
-            List<Dataset> subsets = dataset.splitByAttribute(question);
-            attributeIndices = new ArrayList<>(attributeIndices);
-            attributeIndices.remove((Integer) question);
+    /**
+     * Returns the number of attributes that data points are classified by,
+     * not counting the class.
+     */
+    int attributeCount() {
+        return attributes - 1;
+    }
 
-            // empty subset -> make leaf node with current majority class
-            // else recurse
-            TreeNode[] children = new TreeNode[subsets.size()];
+    /**
+     * Classifies a batch of data points, returning the class label of each.
+     *
+     * @param examples data points, indexed as [example][attribute]
+     * @return class label of each data point, or null for data points with
+     * an attribute value not seen in training
+     * @see #predict(String[][])
+     */
+    public String[] predictLabels(String[][] examples) {
+        int[] classes = predict(examples);
+        String[] classLabels = labels[attributes - 1];
 
-            for (int i = 0; i < children.length; i++)
-                children[i] = subsets.get(i).isEmpty() ?
-                        new TreeNode(null, dataset.majorityClass()) :
-                        id3(subsets.get(i), attributeIndices);
+        String[] result = new String[classes.length];
+        for (int i = 0; i < classes.length; i++)
+            result[i] = classes[i] < 0 ? null : classLabels[classes[i]];
+        return result;
+    }
 
-            return new TreeNode(children, question);
-        }
+    /**
+     * Prints the learned decision tree to standard output.
+     */
+    public void printTree() {
+        if (decisionTree == null) error("Attempted to print null Tree");
+        else if (ensemble == null) System.out.println(decisionTree);
+        else
+            for (int i = 0; i < ensemble.length; i++)
+                System.out.println("Tree " + (i + 1) + ":\n" + ensemble[i]);
     }
 
     /**
-     * Given a dataset of examples and a list of the remaining untested
-     * attributes, returns the index to the row in the attribute matrix that
-     * identifies the attribute with the highest information gain.
+     * Saves the trained classifier to a binary model file, from which it
+     * can be restored by load() without the training data. The file holds,
+     * after a magic number and format version, the attribute names, the
+     * labels of every attribute and of the class, and the nodes of the
+     * compiled tree; all numbers are big-endian ints and all strings are
+     * UTF-8 bytes preceded by their length.
      *
-     * @param dataset          remaining data points
-     * @param attributeIndices remaining attributes to test
-     * @return index of attribute with highest information gain
+     * @param fileName model file to write
+     * @throws IOException if the file cannot be written
      */
-    private int nextQuestion(Dataset dataset, List<Integer> attributeIndices) {
-        double maxInformationGain = Double.MIN_VALUE;
-        int bestAttribute = attributeIndices.get(0);
+    public void save(String fileName) throws IOException {
+        if (decisionTree == null)
+            throw new IllegalStateException("Classifier not trained");
+        if (ensemble != null)
+            throw new IllegalStateException("Ensembles cannot be saved");
 
-        // compute information gain for splitting dataset using each attribute
-        for (Integer att : attributeIndices) {
-            double informationGain = informationGain(dataset, att);
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(fileName)))) {
+            out.writeInt(MODEL_MAGIC);
+            out.writeInt(MODEL_VERSION);
 
-            if (informationGain > maxInformationGain) {
-                maxInformationGain = informationGain;
-                bestAttribute = att;
+            out.writeInt(attributes);
+            for (String name : names)
+                writeString(out, name);
+            for (int attr = 0; attr < attributes; attr++) {
+                out.writeInt(stringCount[attr]);
+                for (int i = 0; i < stringCount[attr]; i++)
+                    writeString(out, labels[attr][i]);
             }
-        }
 
-        return bestAttribute;
+            out.writeInt(compiledTree.size());
+            for (int test : compiledTree.tests)
+                out.writeInt(test);
+            for (int target : compiledTree.targets)
+                out.writeInt(target);
+        }
     }
 
     /**
-     * Computes the information gain for splitting the dataset on the given
-     * attribute. Used to select the next best attribute to split on in the
-     * decision tree.
+     * Restores a classifier saved by save(). The file is memory-mapped and
+     * decoded in place, so a classifier can be ready to classify without
+     * parsing or training on any CSV file.
      *
-     * @param data           dataset to split
-     * @param attributeIndex attribute to split with
-     * @return information gained by splitting with this attribute
+     * @param fileName model file to read
+     * @return trained classifier
+     * @throws IOException if the file cannot be read, is not a model, or is
+     *                     truncated or corrupt
      */
-    private double informationGain(Dataset data, int attributeIndex) {
-        List<Dataset> subsets = data.splitByAttribute(attributeIndex);
-        double subsetsEntropy = 0;
+    public static ID3 load(String fileName) throws IOException {
+        ByteBuffer in;
+        try (FileChannel channel = FileChannel.open(Paths.get(fileName),
+                StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE)
+                throw new IOException("Not an ID3 model: " + fileName);
+            in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
 
-        // sum of entropy of each subset
-        for (Dataset subset : subsets)
-            subsetsEntropy +=
-                    ((double) subset.size() / (double) data.size())
-                    * subset.entropy();
+        try {
+            if (in.getInt() != MODEL_MAGIC)
+                throw new IOException("Not an ID3 model: " + fileName);
+            int version = in.getInt();
+            if (version != MODEL_VERSION)
+                throw new IOException("Unsupported model version " + version
+                        + " in " + fileName);
 
-        // overall change in entropy from splitting on this attribute
-        return data.entropy() - subsetsEntropy;
+            // counts are checked against the file before anything is
+            // allocated for them
+            ID3 classifier = new ID3();
+            classifier.attributes = count(in, 1, Integer.BYTES, fileName);
+            classifier.names = new String[classifier.attributes];
+            for (int attr = 0; attr < classifier.attributes; attr++)
+                classifier.names[attr] = readString(in);
+
+            classifier.labels = new String[classifier.attributes][];
+            classifier.stringCount = new int[classifier.attributes];
+            for (int attr = 0; attr < classifier.attributes; attr++) {
+                String[] values =
+                        new String[count(in, 0, Integer.BYTES, fileName)];
+                for (int i = 0; i < values.length; i++)
+                    values[i] = readString(in);
+                classifier.labels[attr] = values;
+                classifier.stringCount[attr] = values.length;
+            }
+
+            int[] tests = new int[count(in, 1, 2 * Integer.BYTES, fileName)];
+            int[] targets = new int[tests.length];
+            in.asIntBuffer().get(tests).get(targets);
+            checkNodes(tests, targets, classifier.stringCount, fileName);
+
+            classifier.compiledTree = new CompiledTree(tests, targets,
+                    classifier.labels, classifier.stringCount);
+            classifier.decisionTree = classifier.decompile(0);
+            return classifier;
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new IOException("Truncated model file " + fileName, e);
+        } catch (RuntimeException e) {
+            throw new IOException("Corrupt model file " + fileName, e);
+        }
     }
 
     /**
-     * HELPER: determines the index of a particular string in a given array.
-     * Adheres to the same contract as the Java standard library method
-     * list.indexOf(Object o), but works over String arrays.
+     * HELPER: reads a count of items of a model file, each taking at least
+     * the given number of bytes, checking that it is at least min and that
+     * the rest of the file can hold that many items.
      */
-    private int indexOf(String name, String[] strings) {
-        for (int i = 0; i < strings.length; i++)
-            // trimming names because some tests had whitespace character issues
-            if (name.trim().equals(strings[i].trim())) return i;
-        return -1;
+    private static int count(ByteBuffer in, int min, int bytes,
+                             String fileName) throws IOException {
+        int count = in.getInt();
+        if (count < min || count > in.remaining() / bytes)
+            throw new IOException("Corrupt model file " + fileName
+                    + ": count " + count + " at byte " + (in.position() - 4));
+        return count;
     }
 
     /**
-     * Given a 2-dimensional array containing the training data, numbers each
-     * unique value that each attribute has, and stores these Strings in
-     * instance variables; for example, for attribute 2, its first value
-     * would be stored in labels[2][0], its second value in labels[2][1],
-     * and so on; and the number of different values in stringCount[2].
-     **/
-    private void indexStrings(String[][] inputData) {
-        data = inputData;
-        examples = data.length;
-        attributes = data[0].length;
-        stringCount = new int[attributes];
-        labels = new String[attributes][examples];// might not need all columns
-
-        int index = 0;
-        for (int attr = 0; attr < attributes; attr++) {
-            stringCount[attr] = 0;
-
-            for (int ex = 1; ex < examples; ex++) {
-                for (index = 0; index < stringCount[attr]; index++)
-                    // seen this string before
-                    if (data[ex][attr].equals(labels[attr][index])) break;
-
-                // new string found
-                if (index == stringCount[attr])
-                    labels[attr][stringCount[attr]++] = data[ex][attr];
-            }
+     * HELPER: checks that the nodes of a model file form a tree, as
+     * compile() lays it out: every inner node tests an attribute and has
+     * one child per value of it after itself, and every leaf holds a class.
+     */
+    private static void checkNodes(int[] tests, int[] targets,
+                                   int[] stringCount, String fileName)
+            throws IOException {
+        int classCount = stringCount[stringCount.length - 1];
+        for (int node = 0; node < tests.length; node++) {
+            int test = tests[node];
+            int target = targets[node];
+            boolean valid = test < 0
+                    ? test == -1 && target >= 0 && target < classCount
+                    : test < stringCount.length - 1 && target > node
+                    && target <= tests.length - stringCount[test];
+            if (!valid)
+                throw new IOException("Corrupt model file " + fileName
+                        + ": node " + node);
         }
     }
 
     /**
-     * DEBUGGING: prints the list of attribute values for each attribute
-     * and their index values.
+     * Sets the largest count for which n log2 n is looked up in a table
+     * during split search, rather than computed. Information gains are
+     * ranked from these terms, so the table saves most of the logarithms of
+     * training; counts above the bound, which only occur near the root of
+     * large training sets, are computed as needed. The table costs 8 bytes
+     * per count. The table of the default size, ENTROPY_TABLE_SIZE, is
+     * built when first needed and shared by every classifier; a table of
+     * another size is built here for this classifier alone.
+     *
+     * @param maxCount largest count held in the table
+     * @throws IllegalArgumentException if maxCount is negative
      */
-    private void printStrings() {
-        for (int attr = 0; attr < attributes; attr++)
-            for (int index = 0; index < stringCount[attr]; index++)
-                System.out.println(data[0][attr] + " value " + index +
-                        " = " + labels[attr][index]);
+    public void setEntropyTableSize(int maxCount) {
+        if (maxCount < 0)
+            throw new IllegalArgumentException(
+                    "Negative entropy table size: " + maxCount);
+        nLogN = maxCount == ENTROPY_TABLE_SIZE ? null : nLogNTable(maxCount);
     }
 
     /**
-     * Reads a text file containing a fixed number of comma-separated values
-     * on each line, and returns a two dimensional array of these values,
-     * indexed by line number and position in line.
+     * Sets the largest number of counts (one int each) that out-of-core
+     * training holds in memory at once. A tree level whose contingency
+     * tables need more counts than this is counted in several passes.
+     *
+     * @param cells number of counts held per pass
      */
-    private static String[][] parseCSV(String fileName)
-            throws FileNotFoundException, IOException {
-        BufferedReader br = new BufferedReader(new FileReader(fileName));
+    public void setOutOfCoreBudget(long cells) {
+        countBudget = cells;
+    }
 
-        // compute number of fields per line and number of lines
-        String s = br.readLine();
-        int fields = 1;
-        int index = 0;
-        int lines = 1;
+    /**
+     * Makes training from CSV files keep an encoded copy of each file in the
+     * given directory, and train from the copy rather than the file while
+     * the file is unchanged. The copy holds the attribute names, the labels
+     * of every attribute and of the class, and the codes of every column,
+     * as Column.forCardinality() would store them; later runs map it into
+     * memory and train on the mapped columns, so they neither parse the
+     * file nor hold its examples on the heap. A copy records the size,
+     * modification time and CRC-32C checksum of its file, and is written
+     * again from the file when any of them changes, or when the copy is
+     * damaged. Passing null stops using the cache.
+     *
+     * @param directory directory of the encoded copies, or null
+     */
+    public void setColumnCache(String directory) {
+        columnCache = directory == null ? null : Paths.get(directory);
+    }
 
-        while ((index = s.indexOf(',', index) + 1) > 0) fields++;
-        while (br.readLine() != null) lines++;
-        br.close();
+    /**
+     * Makes training runs keep the encoded columns and the row numbers they
+     * partition off the heap, in direct buffers allocated for the run and
+     * released as soon as the tree is built, rather than in arrays left for
+     * the collector. The heap then only holds the tree, the labels and the
+     * counts of the nodes being grown, and the collector has no large
+     * arrays to scan or copy. Columns mapped from the column cache are
+     * trained on in place, and unmapped at the end of the run.
+     * <p>
+     * Examples read from a CSV file or given as Strings are still encoded
+     * on the heap first, unless they come from the column cache, and then
+     * copied off it. Direct buffers count against -XX:MaxDirectMemorySize,
+     * which defaults to the largest heap size. Each column is split into
+     * buffers of 1 GB, so its size is only bounded by the Integer.MAX_VALUE
+     * rows of every column, and the memory of the host. Cross-validation
+     * copies the examples off the heap once, and the row numbers of each
+     * fold while it is trained. The bootstrap samples of an ensemble stay
+     * on the heap, and incremental training, whose examples outlive the
+     * run, ignores this setting.
+     *
+     * @param enabled whether to train on off-heap copies
+     */
+    public void setOffHeapStorage(boolean enabled) {
+        offHeap = enabled;
+    }
 
-        // scan through file again to obtain data
-        String[][] data = new String[lines][fields];
-        Scanner sc = new Scanner(new File(fileName));
-        sc.useDelimiter("[,\n]");
+    /**
+     * Enables parallel indexing: indexStrings() numbers the values of the
+     * attributes of String[][] training data concurrently, one task per
+     * attribute, in the given pool. Passing a null pool restores sequential
+     * indexing.
+     *
+     * @param pool pool to index attributes in, or null
+     */
+    public void setParallelIndexing(ForkJoinPool pool) {
+        indexPool = pool;
+    }
 
-        for (int l = 0; l < lines; l++)
-            for (int f = 0; f < fields; f++)
-                if (sc.hasNext()) data[l][f] = sc.next();
-                else error("Scan error in " + fileName + " at " + l + ":" + f);
+    /**
+     * Enables parallel split search: the information gain of the candidate
+     * attributes at a node is computed by tasks running in the given pool.
+     * Nodes with fewer than minRows examples are still searched on the
+     * calling thread, as scheduling would cost more than the search itself.
+     * The learnt tree is the same as with sequential search. Passing a
+     * null pool restores sequential search.
+     *
+     * @param pool    pool to run the search in, or null
+     * @param minRows smallest number of examples searched in parallel
+     */
+    public void setParallelSplitSearch(ForkJoinPool pool, int minRows) {
+        splitPool = pool;
+        splitThreshold = minRows;
+    }
 
-        sc.close();
-        return data;
+    /**
+     * Enables parallel tree growth: after a node is split, the subtrees of
+     * its children are built by concurrent tasks in the given pool. Nodes
+     * with fewer than minRows examples, or at depth maxDepth or deeper,
+     * build their subtrees inline on the current thread. The learnt tree
+     * is the same as with sequential growth. Passing a null pool restores
+     * sequential growth.
+     *
+     * @param pool     pool to grow the tree in, or null
+     * @param minRows  smallest number of examples whose children are forked
+     * @param maxDepth depth from which children are no longer forked
+     */
+    public void setParallelTreeGrowth(ForkJoinPool pool, int minRows,
+                                      int maxDepth) {
+        growthPool = pool;
+        growthThreshold = minRows;
+        growthDepth = maxDepth;
     }
 
     /**
-     * HELPER: Print error message and exit.
+     * Makes training choose the split of large nodes from random samples of
+     * their examples, rather than from all of them, when a sample shows
+     * clearly enough which attribute is best. A node of at least 8 *
+     * sampleRows examples first counts sampleRows of them, drawn with
+     * replacement, and the sample is doubled until the Hoeffding bound
+     * separates the best attribute from the second best: with n examples
+     * drawn, the sampled gains are within
+     * <pre>
+     *     log2(classes) * sqrt(ln(1 / delta) / 2n)
+     * </pre>
+     * bits of the exact ones, but with probability delta. Once the sample
+     * would exceed an eighth of the node, the gains are too close to tell
+     * apart cheaply, and every example is counted as usual. When a sample
+     * settles the question, only the question's own contingency table is
+     * counted over the whole node, to split it, and none of the children's
+     * tables can be derived from the node's. Nodes grown out of core, or
+     * with tables derived from their parent's, are not sampled.
+     * <p>
+     * The samples are drawn from a seed given by the node's position in the
+     * training data, so the tree does not depend on timing, but it may
+     * differ from the exact one wherever a sample misled it. Passing 0
+     * restores exact split selection.
+     *
+     * @param sampleRows examples in a node's first sample, or 0
+     * @param delta      chance that a sampled split is not the best one
      */
-    private static void error(String msg) {
-        System.err.println("Error: " + msg);
-        System.exit(1);
+    public void setSampledSplits(int sampleRows, double delta) {
+        this.sampleRows = sampleRows;
+        this.sampleDelta = delta;
     }
 
 
     /**
-     * Each node of the tree contains either the attribute number (for non-leaf
-     * nodes) or class number (for leaf nodes) in <b>value</b>, and an array of
-     * tree nodes in <b>children</b> containing each of the children of the
-     * node (for non-leaf nodes).
-     * The attribute number corresponds to the column number in the training
-     * and test files. The children are ordered in the same order as the
-     * Strings in labels[][]. E.g., if value == 3, then the array of
-     * children correspond to the branches for attribute 3 (named data[0][3]):
-     * children[0] is the branch for attribute 3 == labels[3][0]
-     * children[1] is the branch for attribute 3 == labels[3][1]
-     * children[2] is the branch for attribute 3 == labels[3][2]
-     * etc.
-     * The class number (leaf nodes) also corresponds to the order of classes
-     * in labels[][]. For example, a leaf with value == 3 corresponds
-     * to the class label labels[attributes-1][3].
+     * Limits the trees learnt by training, so that their size and training
+     * time stay predictable on noisy data. A node that would exceed a limit
+     * becomes a leaf of its majority class, so the tree learnt is still a
+     * valid classifier, only a coarser one. Each limit is off when 0:
+     * <ul>
+     * <li>maxDepth: nodes at that depth become leaves, the root being at
+     * depth 0;</li>
+     * <li>minSplitRows: nodes with fewer examples become leaves;</li>
+     * <li>minGain: nodes whose best split has a lower information gain, in
+     * bits, become leaves;</li>
+     * <li>maxNodes: a split that would take a tree past that many nodes,
+     * leaves included, is not made. Trees grown in memory take their nodes
+     * depth first, branch by branch, and those grown out of core level by
+     * level, so the two cut the tree differently; with parallel growth the
+     * cut depends on timing;</li>
+     * <li>timeLimitMillis: once a training run has lasted that long, every
+     * node left becomes a leaf. The tree then depends on timing.</li>
+     * </ul>
+     * The limits apply to every tree of an ensemble, and to each fold of a
+     * cross-validation. As limited trees depend on how they were grown,
+     * update() trains again on all the examples while limits are set.
+     *
+     * @param maxDepth        depth at which nodes are no longer split
+     * @param minSplitRows    fewest examples of a node to split
+     * @param minGain         least information gain of a split
+     * @param maxNodes        most nodes of a tree
+     * @param timeLimitMillis longest training run, in milliseconds
      */
-    class TreeNode {
-        TreeNode[] children;
-        int value;
+    public void setLimits(int maxDepth, int minSplitRows, double minGain,
+                          int maxNodes, long timeLimitMillis) {
+        this.maxDepth = maxDepth;
+        this.minSplitRows = minSplitRows;
+        this.minGain = minGain;
+        this.maxNodes = maxNodes;
+        this.timeLimit = timeLimitMillis * 1000000;
+    }
 
+    /**
+     * HELPER: returns the limits set by setLimits() for a training run
+     * starting now, or null if none are set.
+     */
+    private Limits limits() {
+        if (maxDepth <= 0 && minSplitRows <= 0 && minGain <= 0
+                && maxNodes <= 0 && timeLimit <= 0)
+            return null;
+        return new Limits(maxDepth, minSplitRows, minGain, maxNodes,
+                timeLimit > 0 ? System.nanoTime() + timeLimit : 0);
+    }
 
-        public TreeNode(TreeNode[] ch, int val) {
-            value = val;
-            children = ch;
+    /**
+     * Builds the decision tree for the given dataset, which spans all the
+     * training examples and attributes.
+     *
+     * @param dataset encoded training data
+     */
+    private void train(Dataset dataset) {
+        if (offHeap && !incremental) {
+            try (OffHeapStore store = new OffHeapStore()) {
+                trainOn(store.copy(dataset, stringCount));
+            }
+        } else {
+            trainOn(dataset);
         }
+    }
 
-
-        @Override
-        public String toString() {
-            return toString("");
+    /**
+     * HELPER: builds the decision tree, or the ensemble, for train().
+     */
+    private void trainOn(Dataset dataset) {
+        if (ensembleSize > 0) {
+            trainEnsemble(dataset);
+            return;
         }
 
-        String toString(String indent) {
-            if (children != null) {
-                StringBuilder s = new StringBuilder();
-                for (int i = 0; i < children.length; i++) {
-                    s.append(indent)
-                            .append(data[0][value])
-                            .append("=")
-                            .append(labels[value][i])
-                            .append("\n")
-                            .append(children[i].toString(indent + '\t'));
-                }
-                return s.toString();
-            } else {
-                return indent + "Class: " + labels[attributes - 1][value] + "\n";
-            }
+        // updates append examples, so the columns must be able to grow
+        if (incremental && dataset != history) {
+            Column[] columns = new Column[dataset.attributesSize() + 1];
+            for (int i = 0; i < columns.length - 1; i++)
+                columns[i] = new ColumnBuilder(dataset.attributes[i]);
+            columns[columns.length - 1] = new ColumnBuilder(dataset.classes);
+            dataset = history = new Dataset(columns, stringCount);
         }
-    }
 
+        TrainingEvent event = new TrainingEvent();
+        event.begin();
+        trainingStats = newTrainingStats(event, dataset.size());
+
+        decisionTree = grow(
+                dataset,
+                IntStream.range(0, dataset.attributesSize())
+                        .boxed()
+                        .collect(Collectors.toList()),
+                0
+        );
+        compiledTree = compile(decisionTree);
+        ensemble = null;
+        compiledEnsemble = null;
+        report(event);
+    }
 
     /**
-     * The Dataset class partially abstracts the details of classes, attributes,
-     * examples, and their handling during the training phase. Its purpose is
-     * to make the implementation of the ID3 algorithm more legible.
+     * Makes training build a bagged ensemble (a random forest) rather than a
+     * single tree, or a single tree again if trees is 0. Each tree is grown
+     * by id3() from a bootstrap sample of the examples, as many drawn with
+     * replacement, and chooses each split among a random subset of the
+     * attributes left at the node. Classification takes the majority vote
+     * of the trees.
      * <p>
-     * A Dataset represents a collection of example data points, and a set of
-     * attributes and classes defining the space within which those data points
-     * reside. A Dataset object provides methods for querying the dataset's
-     * properties and manipulating it. In particular, the computation of a
-     * dataset's entropy, as well as the splitting of a dataset into subsets
-     * based on some attribute are implemented in this class.
+     * The trees share the encoded training data: a sample is an array of
+     * row numbers into it, so each tree costs one int per example on top of
+     * the tree itself. With a pool, the trees are grown concurrently, one
+     * task per tree, and predict() votes on parts of its batch in parallel.
+     * The trees only depend on the seed, not on the pool. Ensembles are not
+     * kept for update(), nor saved by save().
+     *
+     * @param pool     pool to grow trees and vote in, or null
+     * @param trees    number of trees, or 0 for a single tree
+     * @param features attributes drawn at each node, or 0 for the square
+     *                 root of the number of attributes
+     * @param seed     seed of the random samples
      */
-    private class Dataset {
-        private List<String> classes;
-        private List<List<String>> attributes;
-        private List<Example> examples;
-
-
-        /**
-         * Constructs a Dataset from trainingData[][] and labels[][] matrices,
-         * where both matrices are formatted as produced by the method
-         * indexStrings().
-         *
-         * @param trainingData examples
-         * @param labels       attribute and class labels
-         */
-        Dataset(String[][] trainingData, String[][] labels) {
-            // extract examples from trainingData[][]
-            // first row skipped as it contains column names
-            examples = new ArrayList<>();
-            for (int i = 1; i < trainingData.length; i++) {
-                String[] example = trainingData[i];
-                examples.add(new Example(example));
-            }
+    public void setEnsemble(ForkJoinPool pool, int trees, int features,
+                            long seed) {
+        ensemblePool = pool;
+        ensembleSize = trees;
+        ensembleFeatures = features;
+        ensembleSeed = seed;
+    }
 
-            // extract attributes from labels[][] matrix
-            attributes = new ArrayList<>();
-            for (int i = 0; i < labels.length; i++) {
-                // class labels
-                if (i == labels.length - 1)
-                    classes = new ArrayList<>(Arrays.asList(labels[i]));
-                    // attribute labels
-                else attributes.add(new ArrayList<>(Arrays.asList(labels[i])));
-            }
+    /**
+     * Builds the bagged trees set by setEnsemble() for the given dataset.
+     *
+     * @param dataset encoded training data
+     */
+    private void trainEnsemble(Dataset dataset) {
+        TrainingEvent event = new TrainingEvent();
+        event.begin();
+        trainingStats = newTrainingStats(event, dataset.size());
 
-            // remove nulls (the labels[][] matrix usually contains null cells)
-            classes.removeAll(Collections.singleton(null));
-            attributes.forEach(attribute
-                    -> attribute.removeAll(Collections.singleton(null)));
-        }
+        int features = featuresPerNode(dataset);
+        Limits limits = limits();
 
-        /**
-         * Private constructor for internal use.
-         *
-         * @param classes    list of class labels
-         * @param attributes list of attribute labels
-         * @param examples   data points
-         */
-        private Dataset(List<String> classes, List<List<String>> attributes,
-                        List<Example> examples) {
-            this.classes = classes;
-            this.attributes = attributes;
-            this.examples = examples;
+        List<ForkJoinTask<TreeNode>> trees = new ArrayList<>();
+        for (int i = 0; i < ensembleSize; i++) {
+            long seed = ensembleSeed + i;
+            Limits treeLimits = limits == null ? null : limits.copy();
+            trees.add(ForkJoinTask.adapt(
+                    () -> growBagged(dataset, features, seed, treeLimits)));
         }
 
+        if (ensemblePool != null)
+            invoke(ensemblePool, ForkJoinTask.adapt(() -> {
+                ForkJoinTask.invokeAll(trees);
+            }));
+        else
+            for (ForkJoinTask<TreeNode> tree : trees) tree.invoke();
 
-        /**
-         * Returns the size of the data set.
-         *
-         * @return number of examples in data set
-         */
-        int size() {
-            return examples.size();
+        ensemble = new TreeNode[ensembleSize];
+        compiledEnsemble = new CompiledTree[ensembleSize];
+        for (int i = 0; i < ensembleSize; i++) {
+            ensemble[i] = trees.get(i).join();
+            compiledEnsemble[i] = compile(ensemble[i]);
         }
 
-        /**
-         * Returns true if the data set contains no examples.
-         *
-         * @return true if empty, false otherwise
-         */
-        boolean isEmpty() {
-            return examples.size() == 0;
-        }
+        decisionTree = ensemble[0];
+        compiledTree = compiledEnsemble[0];
+        history = null;
+        report(event);
+    }
 
-        /**
-         * Returns the number of attributes in the data set.
-         *
-         * @return number of attributes in data set
-         */
-        int attributesSize() {
-            return attributes.size();
-        }
+    /**
+     * HELPER: number of attributes drawn at each node of a bagged tree, as
+     * set by setEnsemble(), or the square root of the number of attributes.
+     */
+    private int featuresPerNode(Dataset dataset) {
+        return ensembleFeatures > 0
+                ? ensembleFeatures
+                : (int) Math.max(1, Math.round(
+                Math.sqrt(dataset.attributesSize())));
+    }
 
-        /**
+    /**
+     * Grows one tree of a bagged ensemble from a bootstrap sample of the
+     * dataset, drawing the candidate attributes of each node.
+     *
+     * @param dataset  encoded training data
+     * @param features attributes drawn at each node
+     * @param seed     seed of the sample and of the draws
+     * @param limits   limits of the tree, or null
+     * @return root of the tree
+     */
+    private TreeNode growBagged(Dataset dataset, int features, long seed,
+                                Limits limits) {
+        Random random = new Random(seed);
+        int[] sample = new int[dataset.size()];
+        for (int i = 0; i < sample.length; i++)
+            sample[i] = dataset.rows.get(
+                    dataset.from + random.nextInt(sample.length));
+
+        Dataset bag = new Dataset(dataset, sample);
+        Workspace workspace = new Workspace(bag,
+                IntStream.range(0, bag.attributesSize()).toArray(), 0);
+        workspace.random = random;
+        workspace.features = features;
+        workspace.limits = limits;
+
+        TrainingStats stats = trainingStats;
+        if (stats != null) workspace.stats = stats.part();
+        TreeNode root = id3(bag, 0, sample.length, workspace, 0);
+        if (stats != null) stats.add(workspace.stats);
+        return root;
+    }
+
+    /**
+     * Estimates the accuracy of the classifier, as currently configured, on
+     * the examples in the given CSV file by k-fold cross-validation. See
+     * crossValidate(ForkJoinPool, String[][], int, long).
+     *
+     * @param pool     pool to train the folds in, or null
+     * @param fileName CSV file with a header line, class in last column
+     * @param folds    number of folds, at least 2
+     * @param seed     seed of the assignment of examples to folds
+     * @return accuracy and confusion matrix of each fold
+     * @throws IOException if the file cannot be read, or a line has the
+     *                     wrong number of fields
+     */
+    public CrossValidation crossValidate(ForkJoinPool pool, String fileName,
+                                         int folds, long seed)
+            throws IOException {
+        return crossValidate(pool, loadCSV(fileName), folds, seed);
+    }
+
+    /**
+     * Estimates the accuracy of the classifier, as currently configured, on
+     * the given examples by k-fold cross-validation: the examples are
+     * shuffled into k folds of nearly equal size, and each fold is
+     * classified by a tree (or an ensemble, as set by setEnsemble()) trained
+     * on the other k - 1.
+     * <p>
+     * The examples are encoded once, and every fold is an array of row
+     * numbers into the shared columns, so the folds cost one int per
+     * example each rather than a copy of the data. With a pool, the k
+     * models are trained and evaluated concurrently, one task per fold.
+     * The result only depends on the seed, not on the pool. Any tree learnt
+     * earlier is discarded, since the data's labels replace its own.
+     *
+     * @param pool  pool to train the folds in, or null
+     * @param data  examples, the first row holding the attribute names
+     * @param folds number of folds, at least 2
+     * @param seed  seed of the assignment of examples to folds
+     * @return accuracy and confusion matrix of each fold
+     */
+    public CrossValidation crossValidate(ForkJoinPool pool, String[][] data,
+                                         int folds, long seed) {
+        return crossValidate(pool,
+                new Dataset(indexStrings(data), stringCount), folds, seed);
+    }
+
+    /**
+     * Cross-validates on an encoded dataset spanning all the examples, or
+     * on an off-heap copy of it.
+     */
+    private CrossValidation crossValidate(ForkJoinPool pool, Dataset dataset,
+                                          int folds, long seed) {
+        if (offHeap) {
+            try (OffHeapStore store = new OffHeapStore()) {
+                return crossValidateOn(pool, store.copy(dataset, stringCount),
+                        folds, seed);
+            }
+        } else {
+            return crossValidateOn(pool, dataset, folds, seed);
+        }
+    }
+
+    /**
+     * HELPER: cross-validates for crossValidate().
+     */
+    private CrossValidation crossValidateOn(ForkJoinPool pool,
+                                            Dataset dataset, int folds,
+                                            long seed) {
+        if (folds < 2 || folds > dataset.size())
+            throw new IllegalArgumentException("Cannot make " + folds
+                    + " folds of " + dataset.size() + " examples");
+        decisionTree = null;
+        compiledTree = null;
+        ensemble = null;
+        compiledEnsemble = null;
+        history = null;
+
+        // shuffled row numbers; fold f holds the slice [bounds[f],
+        // bounds[f + 1]) and is trained on the rest
+        int[] order = dataset.rows();
+        Random random = new Random(seed);
+        for (int i = order.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int swap = order[i];
+            order[i] = order[j];
+            order[j] = swap;
+        }
+        int[] bounds = new int[folds + 1];
+        for (int f = 0; f <= folds; f++)
+            bounds[f] = (int) ((long) order.length * f / folds);
+
+        List<ForkJoinTask<int[][]>> tasks = new ArrayList<>();
+        for (int f = 0; f < folds; f++) {
+            int from = bounds[f];
+            int to = bounds[f + 1];
+            tasks.add(ForkJoinTask.adapt(
+                    () -> crossValidateFold(dataset, order, from, to)));
+        }
+
+        if (pool != null)
+            invoke(pool, ForkJoinTask.adapt(() -> {
+                ForkJoinTask.invokeAll(tasks);
+            }));
+        else
+            for (ForkJoinTask<int[][]> task : tasks) task.invoke();
+
+        int[][][] confusion = new int[folds][][];
+        for (int f = 0; f < folds; f++)
+            confusion[f] = tasks.get(f).join();
+        return new CrossValidation(labels[attributes - 1], confusion);
+    }
+
+    /**
+     * Trains on the rows of order[] outside [from, to), and classifies those
+     * inside it. With off-heap storage, the fold's row numbers are kept off
+     * the heap until its trees are grown.
+     *
+     * @return confusion matrix of the fold, indexed as [actual][predicted]
+     */
+    private int[][] crossValidateFold(Dataset dataset, int[] order, int from,
+                                      int to) {
+        int size = order.length - (to - from);
+        try (OffHeapStore store = offHeap ? new OffHeapStore() : null) {
+            Column rows = store != null
+                    ? store.rows(size) : new IntColumn(new int[size]);
+            for (int i = 0, row = 0; i < order.length; i++)
+                if (i < from || i >= to) rows.set(row++, order[i]);
+            return crossValidateFold(dataset,
+                    new Dataset(dataset, rows, 0, size), order, from, to);
+        }
+    }
+
+    /**
+     * HELPER: trains on the given training set of a fold, and classifies
+     * the rows of order[] inside [from, to).
+     */
+    private int[][] crossValidateFold(Dataset dataset, Dataset training,
+                                      int[] order, int from, int to) {
+        TreeNode[] trees;
+        Limits limits = limits();
+        if (ensembleSize > 0) {
+            int features = featuresPerNode(dataset);
+            trees = new TreeNode[ensembleSize];
+            for (int i = 0; i < trees.length; i++)
+                trees[i] = growBagged(training, features, ensembleSeed + i,
+                        limits == null ? null : limits.copy());
+        } else {
+            trees = new TreeNode[]{new Subtree(training, 0, training.size(),
+                    IntStream.range(0, dataset.attributesSize()).toArray(), 0,
+                    limits).invoke()};
+        }
+
+        // every value was encoded with the whole dataset, so every tree has
+        // a branch for it, even if no training example of the fold took it
+        int[][] confusion = new int[dataset.classCount][dataset.classCount];
+        int[] votes = new int[dataset.classCount];
+        for (int i = from; i < to; i++) {
+            Arrays.fill(votes, 0);
+            for (TreeNode node : trees) {
+                while (node.children != null)
+                    node = node.children[
+                            dataset.attributes[node.value].get(order[i])];
+                votes[node.value]++;
+            }
+            confusion[dataset.classes.get(order[i])][majorityClass(votes)]++;
+        }
+        return confusion;
+    }
+
+    /**
+     * Sets the listener to receive figures about the training runs and
+     * classifications of this classifier, or null for none. The figures are
+     * also recorded as JDK Flight Recorder events (id3.Training,
+     * id3.TrainingDepth and id3.Classification) when a recording enables
+     * them. While neither listens, training and classification only check
+     * whether they do.
+     *
+     * @param listener receiver of the figures, or null
+     */
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * HELPER: returns the figures to collect about a training run on the
+     * given number of examples, or null if no one is listening.
+     */
+    private TrainingStats newTrainingStats(TrainingEvent event,
+                                           int examples) {
+        return listener != null || event.isEnabled()
+                ? new TrainingStats(examples, names, stringCount)
+                : null;
+    }
+
+    /**
+     * HELPER: completes the figures of the training run just finished with
+     * those of the learnt tree, and passes them to the listener and to the
+     * Flight Recorder.
+     */
+    private void report(TrainingEvent event) {
+        TrainingStats stats = trainingStats;
+        trainingStats = null;
+        if (stats == null) return;
+
+        event.end();
+        if (ensemble == null) {
+            stats.finish(compiledTree.size(), decisionTree.depth());
+        } else {
+            int size = 0;
+            int depth = 0;
+            for (int i = 0; i < ensemble.length; i++) {
+                size += compiledEnsemble[i].size();
+                depth = Math.max(depth, ensemble[i].depth());
+            }
+            stats.finish(size, depth);
+        }
+        if (listener != null) listener.trained(stats);
+
+        if (event.shouldCommit()) {
+            int widest = 0;
+            for (int i = 1; i < stats.cardinalities.length - 1; i++)
+                if (stats.cardinalities[i] > stats.cardinalities[widest])
+                    widest = i;
+
+            event.examples = stats.examples;
+            event.attributes = stats.cardinalities.length - 1;
+            event.widestAttribute = stats.names[widest];
+            event.widestCardinality = stats.cardinalities[widest];
+            event.treeSize = stats.treeSize;
+            event.treeDepth = stats.treeDepth;
+            event.gainEvaluations = stats.gainEvaluations;
+            event.exactGainEvaluations = stats.exactGainEvaluations;
+            event.commit();
+
+            for (int depth = 0; depth < stats.nodes.length; depth++) {
+                if (stats.nodes[depth] == 0) continue;
+                TrainingDepthEvent depthEvent = new TrainingDepthEvent();
+                depthEvent.depth = depth;
+                depthEvent.nodes = stats.nodes[depth];
+                depthEvent.rowsScanned = stats.rows[depth];
+                depthEvent.time = stats.nanos[depth];
+                depthEvent.commit();
+            }
+        }
+    }
+
+    /**
+     * HELPER: passes the figures of a classification just finished to the
+     * listener and to the Flight Recorder.
+     */
+    private void report(ClassificationEvent event, long start, int count) {
+        if (listener != null)
+            listener.classified(count, System.nanoTime() - start);
+        if (event.shouldCommit()) {
+            event.examples = count;
+            event.commit();
+        }
+    }
+
+    /**
+     * Builds the subtree for a dataset by executing id3() on it, in the
+     * growth pool if one is set. In incremental mode, the nodes of the
+     * subtree are then annotated with their counts.
+     *
+     * @param dataset          data points to elicit nodes for
+     * @param attributeIndices remaining attributes for splitting
+     * @param depth            depth of the subtree's root in the tree
+     * @return root of the subtree
+     */
+    private TreeNode grow(Dataset dataset, List<Integer> attributeIndices,
+                          int depth) {
+        Subtree subtree = new Subtree(dataset, dataset.from, dataset.to,
+                attributeIndices.stream().mapToInt(Integer::intValue).toArray(),
+                depth, limits());
+
+        if (growthPool != null) invoke(growthPool, subtree);
+        else subtree.invoke();
+
+        TreeNode node = subtree.join();
+        if (incremental) annotate(node, dataset, attributeIndices);
+        return node;
+    }
+
+    /**
+     * Enables incremental training: the next training run keeps the encoded
+     * examples, and the class frequencies and contingency tables of every
+     * node, so that update() can later add examples to the tree without
+     * training it again from scratch. This costs memory in proportion to
+     * the size of the tree times the attributes left at each node.
+     *
+     * @param enabled true to keep the counts needed by update()
+     */
+    public void setIncremental(boolean enabled) {
+        incremental = enabled;
+        if (!enabled) history = null;
+    }
+
+    /**
+     * Adds a batch of labelled examples to a classifier trained in
+     * incremental mode. The result is the tree that training on all the
+     * examples received so far would have learnt, but only the subtrees
+     * whose best split changes are rebuilt.
+     * <p>
+     * The examples are counted into the nodes they reach, from the root
+     * down. Where the counts of a node still lead to the same decision (the
+     * same split, or a leaf), the examples are passed on to its children;
+     * where the decision changes, the node's subtree is rebuilt from the
+     * examples stored at its leaves and the new ones, in the manner of
+     * ID5R. New values of an attribute add branches to the nodes that test
+     * it. A new class, which changes the shape of every count, makes the
+     * whole tree be rebuilt.
+     *
+     * @param trainingData examples to add, with the same header line and
+     *                     columns as the original training data
+     */
+    public void update(String[][] trainingData) {
+        if (history == null)
+            throw new IllegalStateException("Classifier not trained in "
+                    + "incremental mode");
+        if (trainingData[0].length != attributes)
+            throw new IllegalArgumentException("Expected " + attributes
+                    + " columns, got " + trainingData[0].length);
+
+        int classIndex = attributes - 1;
+        int classes = stringCount[classIndex];
+        int first = history.size();
+
+        // encode the examples, numbering unseen values after the known ones
+        for (int attr = 0; attr < attributes; attr++) {
+            Map<String, Integer> indices = new HashMap<>();
+            for (int i = 0; i < stringCount[attr]; i++)
+                indices.put(labels[attr][i], i);
+
+            List<String> values = new ArrayList<>(
+                    Arrays.asList(labels[attr]).subList(0, stringCount[attr]));
+            ColumnBuilder column = attr == classIndex
+                    ? (ColumnBuilder) history.classes
+                    : (ColumnBuilder) history.attributes[attr];
+
+            for (int ex = 1; ex < trainingData.length; ex++) {
+                Integer index = indices.get(trainingData[ex][attr]);
+                if (index == null) {
+                    index = values.size();
+                    indices.put(trainingData[ex][attr], index);
+                    values.add(trainingData[ex][attr]);
+                }
+                column.add(index);
+            }
+
+            labels[attr] = values.toArray(new String[values.size()]);
+            stringCount[attr] = labels[attr].length;
+        }
+
+        Column[] columns = Arrays.copyOf(history.attributes, attributes);
+        columns[classIndex] = history.classes;
+        history = new Dataset(columns, stringCount);
+        examples = history.size() + 1;
+
+        // limited trees depend on how they were grown, so grow them again
+        if (stringCount[classIndex] != classes || limits() != null) {
+            train(history);
+            return;
+        }
+
+        int[] added = new int[history.size() - first];
+        for (int i = 0; i < added.length; i++)
+            added[i] = first + i;
+
+        TrainingEvent event = new TrainingEvent();
+        event.begin();
+        trainingStats = newTrainingStats(event, added.length);
+
+        decisionTree = update(
+                decisionTree,
+                new Dataset(history, added),
+                IntStream.range(0, classIndex)
+                        .boxed()
+                        .collect(Collectors.toList()),
+                0
+        );
+        compiledTree = compile(decisionTree);
+        report(event);
+    }
+
+    /**
+     * Counts new examples into a node annotated by annotate(), and updates
+     * the subtree rooted at the node so that it is the one id3() would build
+     * from all of the node's examples.
+     *
+     * @param node             node reached by the new examples
+     * @param added            new examples reaching the node
+     * @param attributeIndices remaining attributes for splitting at the node
+     * @param depth            depth of the node in the tree
+     * @return the updated node, or the root of its rebuilt subtree
+     */
+    private TreeNode update(TreeNode node, Dataset added,
+                            List<Integer> attributeIndices, int depth) {
+        NodeCounts counts = node.counts;
+        counts.add(added, attributeIndices);
+
+        int classes = added.classesSize();
+        int size = 0;
+        int distinct = 0;
+        int firstClass = 0;
+        for (int c = 0; c < classes; c++) {
+            size += counts.classCounts[c];
+            if (counts.classCounts[c] > 0 && distinct++ == 0) firstClass = c;
+        }
+
+        if (distinct == 1 || attributeIndices.isEmpty()) {
+            // still a leaf, possibly of another class
+            if (node.children == null) {
+                node.value = distinct == 1
+                        ? firstClass : majorityClass(counts.classCounts);
+                counts.addRows(added.rows());
+                return node;
+            }
+        } else {
+            double entropy = entropy(counts.classCounts, 0, classes, size);
+            double[] gains = new double[attributeIndices.size()];
+            for (int i = 0; i < gains.length; i++)
+                gains[i] = informationGain(
+                        counts.tables[i], classes, size, entropy);
+            int question = attributeIndices.get(bestAttribute(gains));
+
+            // still split on the same attribute, pass examples to children
+            if (node.children != null && node.value == question) {
+                List<Dataset> subsets = added.splitByAttribute(question);
+                List<Integer> remaining = new ArrayList<>(attributeIndices);
+                remaining.remove((Integer) question);
+
+                int majorityClass = majorityClass(counts.classCounts);
+                int branches = node.children.length;
+                node.children = Arrays.copyOf(node.children, subsets.size());
+                for (int i = branches; i < node.children.length; i++)
+                    node.children[i] = new TreeNode(null, majorityClass);
+
+                for (int i = 0; i < node.children.length; i++) {
+                    TreeNode child = node.children[i];
+                    boolean empty = child.counts == null;
+
+                    if (!subsets.get(i).isEmpty())
+                        node.children[i] = empty
+                                ? grow(subsets.get(i), remaining, depth + 1)
+                                : update(child, subsets.get(i), remaining,
+                                depth + 1);
+                    else if (empty)
+                        child.value = majorityClass;
+                }
+                return node;
+            }
+        }
+
+        // decision changed: rebuild the subtree from all of its examples
+        int[] rows = collectRows(node, new int[size], 0, added.rows());
+        return grow(new Dataset(added, rows), attributeIndices, depth);
+    }
+
+    /**
+     * Annotates the nodes of a subtree built by id3() with their counts, and
+     * its leaves with their examples, for update().
+     *
+     * @param node             root of the subtree
+     * @param dataset          data points the subtree was built from
+     * @param attributeIndices remaining attributes for splitting at the node
+     */
+    private void annotate(TreeNode node, Dataset dataset,
+                          List<Integer> attributeIndices) {
+        node.counts = new NodeCounts(dataset, attributeIndices,
+                node.children == null);
+        if (node.children == null) return;
+
+        List<Dataset> subsets = dataset.splitByAttribute(node.value);
+        List<Integer> remaining = new ArrayList<>(attributeIndices);
+        remaining.remove((Integer) node.value);
+
+        // leaves of empty subsets have no counts
+        for (int i = 0; i < node.children.length; i++)
+            if (!subsets.get(i).isEmpty())
+                annotate(node.children[i], subsets.get(i), remaining);
+    }
+
+    /**
+     * HELPER: copies the examples stored at the leaves below a node into
+     * rows[], starting at index from, followed by the given extra examples.
+     * Returns rows[].
+     */
+    private static int[] collectRows(TreeNode node, int[] rows, int from,
+                                     int[] extra) {
+        Deque<TreeNode> pending = new ArrayDeque<>();
+        pending.push(node);
+
+        while (!pending.isEmpty()) {
+            TreeNode next = pending.pop();
+            if (next.children != null) {
+                for (TreeNode child : next.children) pending.push(child);
+            } else if (next.counts != null) {
+                System.arraycopy(next.counts.rows, 0, rows, from,
+                        next.counts.size);
+                from += next.counts.size;
+            }
+        }
+
+        System.arraycopy(extra, 0, rows, from, extra.length);
+        return rows;
+    }
+
+    /**
+     * Grows a decision tree breadth-first from the counts of each level, as
+     * provided by the given counter. Every node of a level is decided the way
+     * id3() decides it: a node whose examples all have the same class, or
+     * with no attributes left, becomes a leaf, and any other node is split
+     * on the attribute with the highest information gain, with empty
+     * branches becoming leaves of the node's majority class. The remaining
+     * branches form the next level. Limits set by setLimits() stop nodes as
+     * in id3().
+     *
+     * @param counter source of the counts of each level
+     * @return root of the decision tree
+     * @throws IOException if the counter fails
+     */
+    private TreeNode growByLevel(FrontierCounter counter) throws IOException {
+        int classes = stringCount[attributes - 1];
+        TreeNode root = new TreeNode(null, 0);
+
+        List<TreeNode> frontier = new ArrayList<>();
+        List<int[]> candidates = new ArrayList<>();
+        frontier.add(root);
+        candidates.add(IntStream.range(0, attributes - 1).toArray());
+        int[][] routing = null;
+        TrainingStats stats = trainingStats;
+        Limits limits = limits();
+
+        for (int depth = 0; !frontier.isEmpty(); depth++) {
+            long start = stats == null ? 0 : System.nanoTime();
+            int[][] nodeCandidates = candidates.toArray(new int[0][]);
+            int[][] classCounts = new int[frontier.size()][];
+            int[][][] tables = new int[frontier.size()][][];
+
+            // count the level in as many passes as the budget requires
+            for (int from = 0, to; from < frontier.size(); from = to) {
+                long cells = countCells(nodeCandidates[from]);
+                for (to = from + 1; to < frontier.size(); to++) {
+                    cells += countCells(nodeCandidates[to]);
+                    if (cells > countBudget) break;
+                }
+
+                Counts counts =
+                        counter.count(routing, nodeCandidates, from, to);
+                if (stats != null) stats.passed(depth);
+                System.arraycopy(counts.classCounts, 0, classCounts, from,
+                        to - from);
+                System.arraycopy(counts.tables, 0, tables, from, to - from);
+                routing = null;
+            }
+
+            // decide each node of the level, opening the next level
+            List<TreeNode> nextFrontier = new ArrayList<>();
+            List<int[]> nextCandidates = new ArrayList<>();
+            routing = new int[frontier.size()][];
+
+            for (int slot = 0; slot < frontier.size(); slot++) {
+                TreeNode node = frontier.get(slot);
+                int[] frequencies = classCounts[slot];
+
+                int size = 0;
+                int distinct = 0;
+                for (int c = 0; c < classes; c++) {
+                    size += frequencies[c];
+                    if (frequencies[c] > 0 && distinct++ == 0) node.value = c;
+                }
+
+                // all examples have same class
+                if (distinct == 1) continue;
+                // no more attributes to split by, or no more splits allowed
+                if (nodeCandidates[slot].length == 0
+                        || limits != null && !limits.grow(depth, size)) {
+                    node.value = majorityClass(frequencies);
+                    continue;
+                }
+
+                double entropy = entropy(frequencies, 0, classes, size);
+                double[] gains = new double[nodeCandidates[slot].length];
+                for (int i = 0; i < gains.length; i++)
+                    gains[i] = informationGain(
+                            tables[slot][i], classes, size, entropy);
+                if (stats != null) {
+                    stats.scanned(depth, size);
+                    stats.evaluated(gains.length, gains.length);
+                }
+
+                int best = bestAttribute(gains);
+                int question = nodeCandidates[slot][best];
+                if (limits != null && !limits.split(gains[best],
+                        stringCount[question])) {
+                    node.value = majorityClass(frequencies);
+                    continue;
+                }
+                int[] remaining = new int[gains.length - 1];
+                for (int i = 0, j = 0; i < gains.length; i++)
+                    if (i != best) remaining[j++] = nodeCandidates[slot][i];
+
+                // empty branch -> leaf with majority class, else next level
+                int[] table = tables[slot][best];
+                int[] route = new int[stringCount[question] + 1];
+                node.value = question;
+                node.children = new TreeNode[stringCount[question]];
+                route[0] = question;
+
+                for (int v = 0; v < node.children.length; v++) {
+                    int subsetSize = 0;
+                    for (int c = 0; c < classes; c++)
+                        subsetSize += table[v * classes + c];
+
+                    if (subsetSize == 0) {
+                        node.children[v] =
+                                new TreeNode(null, majorityClass(frequencies));
+                        route[v + 1] = -1;
+                    } else {
+                        node.children[v] = new TreeNode(null, 0);
+                        route[v + 1] = nextFrontier.size();
+                        nextFrontier.add(node.children[v]);
+                        nextCandidates.add(remaining);
+                    }
+                }
+                routing[slot] = route;
+            }
+
+            if (stats != null)
+                stats.built(depth, frontier.size(), System.nanoTime() - start);
+            frontier = nextFrontier;
+            candidates = nextCandidates;
+        }
+
+        return root;
+    }
+
+    /**
+     * HELPER: number of counts needed for a node with the given candidate
+     * attributes.
+     */
+    private long countCells(int[] candidates) {
+        long cells = 1;
+        for (int attribute : candidates)
+            cells += stringCount[attribute];
+        return cells * stringCount[attributes - 1];
+    }
+
+    /**
+     * Flattens a decision tree into a CompiledTree. Nodes are numbered in
+     * breadth-first order, so the children of every node are numbered
+     * consecutively in branch order.
+     *
+     * @param root root of the decision tree
+     * @return flattened tree
+     */
+    private CompiledTree compile(TreeNode root) {
+        List<TreeNode> nodes = new ArrayList<>();
+        nodes.add(root);
+        for (int i = 0; i < nodes.size(); i++)
+            if (nodes.get(i).children != null)
+                nodes.addAll(Arrays.asList(nodes.get(i).children));
+
+        int[] tests = new int[nodes.size()];
+        int[] targets = new int[nodes.size()];
+        int next = 1;
+        for (int i = 0; i < tests.length; i++) {
+            TreeNode node = nodes.get(i);
+            if (node.children == null) {
+                tests[i] = -1;
+                targets[i] = node.value;
+            } else {
+                tests[i] = node.value;
+                targets[i] = next;
+                next += node.children.length;
+            }
+        }
+
+        return new CompiledTree(tests, targets, labels, stringCount);
+    }
+
+    /**
+     * Rebuilds the TreeNode subtree rooted at the given node of the
+     * compiled tree, reversing compile().
+     *
+     * @param node node of the compiled tree
+     * @return equivalent TreeNode
+     */
+    private TreeNode decompile(int node) {
+        int test = compiledTree.tests[node];
+        int target = compiledTree.targets[node];
+        if (test < 0) return new TreeNode(null, target);
+
+        TreeNode[] children = new TreeNode[stringCount[test]];
+        for (int i = 0; i < children.length; i++)
+            children[i] = decompile(target + i);
+        return new TreeNode(children, test);
+    }
+
+    /**
+     * Executes the iterative dichotomizer 3 algorithm on the training dataset.
+     * Returns root node of the resulting decision tree. The examples of the
+     * node are the rows of the dataset in the range [from, to) of its array
+     * of row numbers, and the attributes still to be tested at the current
+     * sub-tree are those the workspace holds for the node's depth.
+     * <p>
+     * That is, for example, if the data set originally had
+     * 4 distinct attributes, and attribute 3 has been used, the remaining
+     * attributes at depth 1 would be [0, 1, 2].
+     * <p>
+     * Splitting partitions the node's range in place, so that the examples
+     * of each branch form a contiguous range of it, and the counts of the
+     * node are kept in the workspace; apart from the tree itself, growing a
+     * subtree on one thread allocates nothing. The contingency tables of the
+     * largest branch are then usually derived rather than counted, as the
+     * node's tables less those of the other branches, so that a split
+     * keeping most of the examples in one branch costs little counting at
+     * the next depth.
+     *
+     * @param dataset   data points to elicit nodes for
+     * @param from      index of the node's first row
+     * @param to        index after the node's last row
+     * @param workspace scratch buffers, holding the remaining attributes
+     * @param depth     depth of the node in the tree
+     * @return TreeNode representing decision tree
+     */
+    private TreeNode id3(Dataset dataset, int from, int to,
+                         Workspace workspace, int depth) {
+        long start = workspace.clock();
+        Workspace.Level level = workspace.level(depth);
+        int[] classCounts = level.classCounts;
+        dataset.countClasses(from, to, classCounts, workspace.chunk());
+
+        int distinct = 0;
+        int firstClass = 0;
+        for (int c = 0; c < classCounts.length; c++)
+            if (classCounts[c] > 0 && distinct++ == 0) firstClass = c;
+
+        // all examples have same class
+        if (distinct <= 1) {
+            workspace.built(depth, start);
+            return new TreeNode(null, firstClass);
+        }
+        // no more attributes to split by, or no more splits allowed
+        else if (level.candidates.length == 0 || workspace.limits != null
+                && !workspace.limits.grow(depth, to - from)) {
+            workspace.built(depth, start);
+            return new TreeNode(null, majorityClass(classCounts));
+        }
+        // else split by best attribute and handle subsets (including empty)
+        else {
+            int best = nextQuestion(dataset, from, to, workspace, depth);
+            int question = level.candidates[best];
+            int branches = dataset.cardinalities[question];
+            int classes = classCounts.length;
+
+            // split not worth its gain, or past the tree's size
+            if (workspace.limits != null
+                    && !workspace.limits.split(level.gain, branches)) {
+                workspace.built(depth, start);
+                return new TreeNode(null, majorityClass(classCounts));
+            }
+
+            // branch sizes are the row sums of the question's table
+            int[] bounds = level.bounds;
+            int offset = level.offsets[best];
+            bounds[0] = from;
+            for (int value = 0; value < branches; value++) {
+                int subsetSize = 0;
+                for (int c = 0; c < classes; c++)
+                    subsetSize += level.tables[offset + value * classes + c];
+                bounds[value + 1] = bounds[value] + subsetSize;
+            }
+            dataset.partition(question, bounds, branches, workspace.cursors);
+
+            // children test the remaining attributes, in the same order
+            int[] remaining = workspace.level(depth + 1).candidates;
+            System.arraycopy(level.candidates, 0, remaining, 0, best);
+            System.arraycopy(level.candidates, best + 1, remaining, best,
+                    remaining.length - best);
+            workspace.built(depth, start);
+
+            // empty subset -> make leaf node with current majority class
+            // else recurse, forking the subtrees of large shallow nodes
+            TreeNode[] children = new TreeNode[branches];
+            int majorityClass = majorityClass(classCounts);
+
+            if (growthPool != null
+                    && workspace.random == null
+                    && ForkJoinTask.getPool() == growthPool
+                    && to - from >= growthThreshold
+                    && depth < growthDepth) {
+                // keep the last subtree for this thread, fork the others
+                Subtree[] subtrees = new Subtree[branches];
+                int last = 0;
+                for (int i = 0; i < branches; i++) {
+                    if (bounds[i] < bounds[i + 1]) {
+                        subtrees[i] = new Subtree(dataset, bounds[i],
+                                bounds[i + 1], remaining.clone(), depth + 1,
+                                workspace.limits);
+                        last = i;
+                    }
+                }
+                for (int i = 0; i < last; i++)
+                    if (subtrees[i] != null) subtrees[i].fork();
+                subtrees[last].invoke();
+
+                // join in branch order, so the tree does not depend on timing
+                for (int i = 0; i < branches; i++)
+                    children[i] = subtrees[i] != null
+                            ? subtrees[i].join()
+                            : new TreeNode(null, majorityClass);
+            } else {
+                Workspace.Level next = workspace.level(depth + 1);
+                int questionCells = level.offsets[best + 1] - offset;
+                int cells = level.offsets[remaining.length + 1] - questionCells;
+                int derived = workspace.random != null || !level.counted
+                        ? -1 : derivedBranch(level, best, branches, classes,
+                        remaining.length, cells);
+
+                // the derived branch starts from the node's tables, less the
+                // question's, with the rest shifted to the children's layout
+                int[] siblings = null;
+                if (derived >= 0) {
+                    siblings = level.derived(cells);
+                    System.arraycopy(level.tables, 0, siblings, 0, offset);
+                    System.arraycopy(level.tables, level.offsets[best + 1],
+                            siblings, offset, cells - offset);
+                    for (int i = 0; i <= remaining.length; i++)
+                        next.offsets[i] = i <= best
+                                ? level.offsets[i]
+                                : level.offsets[i + 1] - questionCells;
+                }
+
+                for (int i = 0; i < branches; i++) {
+                    if (i == derived) continue;
+                    if (bounds[i] == bounds[i + 1]) {
+                        children[i] = new TreeNode(null, majorityClass);
+                        continue;
+                    }
+
+                    next.counted = false;
+                    children[i] = id3(dataset, bounds[i], bounds[i + 1],
+                            workspace, depth + 1);
+
+                    // take the branch's tables away from the derived one's
+                    if (derived >= 0) {
+                        int[] tables = next.tables(cells);
+                        if (!next.counted) {
+                            dataset.contingencyTables(bounds[i], bounds[i + 1],
+                                    remaining, 0, remaining.length,
+                                    next.offsets, tables, workspace.chunk());
+                            workspace.scanned(depth + 1,
+                                    bounds[i + 1] - bounds[i]);
+                        }
+                        for (int j = 0; j < cells; j++)
+                            siblings[j] -= tables[j];
+                    }
+                }
+
+                if (derived >= 0) {
+                    level.derived = next.tables;
+                    next.tables = siblings;
+                    next.provided = true;
+                    children[derived] = id3(dataset, bounds[derived],
+                            bounds[derived + 1], workspace, depth + 1);
+                    next.provided = false;
+                }
+            }
+
+            return new TreeNode(children, question);
+        }
+    }
+
+    /**
+     * Chooses the branch of a node whose contingency tables are derived from
+     * the node's, as the node's tables less those of the branch's siblings,
+     * rather than counted from its examples. This is the largest branch that
+     * is to be split, provided that counting the siblings it does not
+     * otherwise need counted (those that become leaves, as all their
+     * examples have the same class), and subtracting every sibling's tables,
+     * costs less than counting the branch itself.
+     *
+     * @param level      buffers of the node, holding its tables
+     * @param best       position of the node's question among its candidates
+     * @param branches   number of values of the question
+     * @param classes    number of classes
+     * @param candidates number of attributes left to test at the branches
+     * @param cells      size of the contingency tables of a branch
+     * @return the branch to derive the tables of, or -1 to count them all
+     */
+    private static int derivedBranch(Workspace.Level level, int best,
+                                     int branches, int classes,
+                                     int candidates, int cells) {
+        if (candidates == 0) return -1;
+
+        // class frequencies of each branch, from the question's table
+        int offset = level.offsets[best];
+        int largest = -1;
+        long largestSize = 0;
+        long leafRows = 0;
+        int siblings = -1;
+
+        for (int value = 0; value < branches; value++) {
+            int subsetSize = 0;
+            int distinct = 0;
+            for (int c = 0; c < classes; c++) {
+                int count = level.tables[offset + value * classes + c];
+                subsetSize += count;
+                if (count > 0) distinct++;
+            }
+
+            if (subsetSize > 0) siblings++;
+            if (distinct == 1) leafRows += subsetSize;
+            else if (subsetSize > largestSize) {
+                largest = value;
+                largestSize = subsetSize;
+            }
+        }
+
+        long saved = largestSize * candidates;
+        long spent = leafRows * candidates + (long) siblings * cells;
+        return largest >= 0 && saved > spent ? largest : -1;
+    }
+
+    /**
+     * Given the examples of a node and the remaining untested attributes
+     * held by the workspace for the node's depth, returns the position among
+     * them of the attribute with the highest information gain.
+     * <p>
+     * The class frequencies for every value of every remaining attribute
+     * are counted in a single scan of the examples, into the contingency
+     * tables of the workspace, so that no subsets need to be built in order
+     * to evaluate a candidate attribute. The tables are left in place for
+     * the caller to split with.
+     *
+     * @param dataset   remaining data points
+     * @param from      index of the node's first row
+     * @param to        index after the node's last row
+     * @param workspace scratch buffers, holding the remaining attributes
+     * @param depth     depth of the node in the tree
+     * @return position of attribute with highest information gain
+     */
+    private int nextQuestion(Dataset dataset, int from, int to,
+                             Workspace workspace, int depth) {
+        Workspace.Level level = workspace.level(depth);
+        int[] candidates = level.candidates;
+        int[] offsets = level.offsets;
+        int classes = dataset.classesSize();
+        int count = workspace.draw(candidates);
+
+        for (int i = 0; i < count; i++)
+            offsets[i + 1] = offsets[i]
+                    + dataset.cardinalities[candidates[i]] * classes;
+        int[] tables = level.tables(offsets[count]);
+
+        // large nodes may settle the question on a sample of their examples
+        if (!level.provided && sampleRows > 0 && count > 1) {
+            int best = sampleQuestion(dataset, from, to, workspace, depth,
+                    count);
+            if (best >= 0) return best;
+        }
+
+        // tables derived by id3() from the parent's need no counting
+        if (!level.provided) {
+            if (splitPool != null && to - from >= splitThreshold)
+                invoke(splitPool, new SplitSearch(dataset, from, to,
+                        candidates, offsets, tables, 0, count,
+                        workspace.chunks(count)));
+            else
+                dataset.contingencyTables(from, to, candidates, 0, count,
+                        offsets, tables, workspace.chunk());
+            workspace.scanned(depth, to - from);
+        }
+        level.counted = true;
+
+        // every table adds up to the class frequencies of the node
+        int[] classCounts = level.classCounts;
+        Arrays.fill(classCounts, 0);
+        for (int i = 0; i < offsets[1]; i += classes)
+            for (int c = 0; c < classes; c++)
+                classCounts[c] += tables[i + c];
+
+        // rank the attributes by the entropy left after splitting on each,
+        // which only takes n log n terms of the counts
+        int size = to - from;
+        double[] remainders = level.remainders;
+        double least = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < count; i++) {
+            remainders[i] = splitEntropy(tables, offsets[i], offsets[i + 1],
+                    classes) / size;
+            least = Math.min(least, remainders[i]);
+        }
+
+        // compute information gain for splitting dataset using the
+        // attributes too close to the best to rank by remainders alone
+        double entropy = entropy(classCounts, 0, classes, size);
+        double maxInformationGain = Double.MIN_VALUE;
+        int bestAttribute = 0;
+        int evaluated = 0;
+        for (int i = 0; i < count; i++) {
+            if (remainders[i] > least + GAIN_TOLERANCE) continue;
+
+            double gain = informationGain(tables, offsets[i], offsets[i + 1],
+                    classes, size, entropy);
+            evaluated++;
+            if (gain > maxInformationGain) {
+                maxInformationGain = gain;
+                bestAttribute = i;
+            }
+        }
+
+        workspace.evaluated(count, evaluated);
+        level.gain = maxInformationGain;
+        return bestAttribute;
+    }
+
+    /**
+     * Tries to choose the question of a node from growing random samples of
+     * its examples, as set by setSampledSplits(), for nextQuestion(). Each
+     * sample adds to the contingency tables of the last, and the gains of
+     * the candidates are computed from it until the Hoeffding bound
+     * separates the best from the second best. The question's table is
+     * then counted over all of the node's examples, for id3() to split the
+     * node with; the other tables are left holding the sample, so the node
+     * is marked as not counted.
+     *
+     * @param dataset   remaining data points
+     * @param from      index of the node's first row
+     * @param to        index after the node's last row
+     * @param workspace scratch buffers, holding the remaining attributes
+     * @param depth     depth of the node in the tree
+     * @param count     number of candidates to evaluate
+     * @return position of the chosen attribute, or -1 if every example
+     * needs counting
+     */
+    private int sampleQuestion(Dataset dataset, int from, int to,
+                               Workspace workspace, int depth, int count) {
+        Workspace.Level level = workspace.level(depth);
+        int[] candidates = level.candidates;
+        int[] offsets = level.offsets;
+        int[] tables = level.tables;
+        int classes = dataset.classesSize();
+        int size = to - from;
+        if (size / 8 < sampleRows) return -1;
+
+        double range = Math.log(classes) / LOG2;
+        double logDelta = Math.log(1 / sampleDelta);
+        SplittableRandom random =
+                new SplittableRandom((long) from << 32 ^ to);
+        int[] frequencies = new int[classes];
+        double[] gains = new double[count];
+        Arrays.fill(tables, 0, offsets[count], 0);
+
+        for (int drawn = 0, n = sampleRows; n <= size / 8; n *= 2) {
+            dataset.sampleTables(from, to, n - drawn, random, candidates,
+                    count, offsets, tables);
+            workspace.scanned(depth, n - drawn);
+            drawn = n;
+
+            // every table adds up to the class frequencies of the sample
+            Arrays.fill(frequencies, 0);
+            for (int i = 0; i < offsets[1]; i += classes)
+                for (int c = 0; c < classes; c++)
+                    frequencies[c] += tables[i + c];
+
+            double entropy = entropy(frequencies, 0, classes, n);
+            for (int i = 0; i < count; i++)
+                gains[i] = informationGain(tables, offsets[i], offsets[i + 1],
+                        classes, n, entropy);
+            workspace.evaluated(count, count);
+
+            int best = bestAttribute(gains);
+            double second = Double.NEGATIVE_INFINITY;
+            for (int i = 0; i < count; i++)
+                if (i != best) second = Math.max(second, gains[i]);
+
+            double bound = range * Math.sqrt(logDelta / (2.0 * n));
+            if (gains[best] - second > bound) {
+                dataset.contingencyTables(from, to, candidates, best, best + 1,
+                        offsets, tables, workspace.chunk());
+                level.gain = informationGain(tables, offsets[best],
+                        offsets[best + 1], classes, size, entropy(
+                                level.classCounts, 0, classes, size));
+                level.counted = false;
+                return best;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the entropy left after splitting a dataset on some attribute,
+     * times the size of the dataset, from the attribute's contingency table,
+     * read from tables[from] to tables[to - 1]. For a subset of size n
+     * taking one value, with class frequencies c, this is the sum of
+     * n log2 n - c log2 c over the classes; the terms are looked up in the
+     * n log n table when small enough.
+     * <p>
+     * The information gain of the attribute is the dataset's entropy less
+     * this divided by its size, so attributes rank by this in reverse. It
+     * differs from the gain computed by informationGain() by rounding only,
+     * by far less than GAIN_TOLERANCE, and nextQuestion() takes the exact
+     * gains of the attributes within that tolerance of the best, so that
+     * the choice of split, ties included, is the one bestAttribute() makes.
+     *
+     * @param tables  class frequencies, the table indexed from from as
+     *                [value * classes + class]
+     * @param from    index of the table's first frequency
+     * @param to      index after the table's last frequency
+     * @param classes number of classes
+     * @return entropy of the subsets, weighted by their sizes
+     */
+    private double splitEntropy(int[] tables, int from, int to,
+                                int classes) {
+        double[] nLogN = this.nLogN != null
+                ? this.nLogN : EntropyTable.SHARED;
+        double entropy = 0;
+
+        for (int value = from; value < to; value += classes) {
+            int subsetSize = 0;
+            for (int c = value; c < value + classes; c++) {
+                int count = tables[c];
+                subsetSize += count;
+                entropy -= count < nLogN.length
+                        ? nLogN[count] : count * Math.log(count) / LOG2;
+            }
+            entropy += subsetSize < nLogN.length
+                    ? nLogN[subsetSize]
+                    : subsetSize * Math.log(subsetSize) / LOG2;
+        }
+
+        return entropy;
+    }
+
+    /**
+     * Returns the position of the highest information gain among the gains
+     * of the candidate attributes. Gains are compared in candidate order,
+     * so ties go to the earliest candidate, and the first candidate is
+     * returned if no attribute gains any information.
+     *
+     * @param gains information gain of each candidate attribute
+     * @return position of the best candidate in gains[]
+     */
+    static int bestAttribute(double[] gains) {
+        double maxInformationGain = Double.MIN_VALUE;
+        int bestAttribute = 0;
+
+        for (int i = 0; i < gains.length; i++) {
+            if (gains[i] > maxInformationGain) {
+                maxInformationGain = gains[i];
+                bestAttribute = i;
+            }
+        }
+
+        return bestAttribute;
+    }
+
+    /**
+     * Return the class index with the highest frequency. If there are
+     * multiple classes with equal frequency, returns the first one.
+     *
+     * @param frequencies frequency of each class
+     * @return class with highest frequency
+     */
+    static int majorityClass(int[] frequencies) {
+        int majorityClass = 0;
+
+        // find most frequent class
+        int highestSoFar = 0;
+        for (int i = 0; i < frequencies.length; i++) {
+            if (frequencies[i] > highestSoFar) {
+                majorityClass = i;
+                highestSoFar = frequencies[i];
+            }
+        }
+
+        return majorityClass;
+    }
+
+    /**
+     * Computes the information gain for splitting a dataset on some
+     * attribute, given the attribute's contingency table over the dataset.
+     * Used to select the next best attribute to split on in the decision
+     * tree.
+     *
+     * @param table   class frequencies, indexed as [value * classes + class]
+     * @param classes number of classes
+     * @param size    number of examples in the dataset
+     * @param entropy entropy of the dataset before splitting
+     * @return information gained by splitting with this attribute
+     */
+    static double informationGain(int[] table, int classes, int size,
+                                  double entropy) {
+        return informationGain(table, 0, table.length, classes, size, entropy);
+    }
+
+    /**
+     * Computes the information gain for splitting a dataset on some
+     * attribute, given the attribute's contingency table over the dataset,
+     * read from tables[from] to tables[to - 1].
+     *
+     * @param tables  class frequencies, the table indexed from from as
+     *                [value * classes + class]
+     * @param from    index of the table's first frequency
+     * @param to      index after the table's last frequency
+     * @param classes number of classes
+     * @param size    number of examples in the dataset
+     * @param entropy entropy of the dataset before splitting
+     * @return information gained by splitting with this attribute
+     */
+    static double informationGain(int[] tables, int from, int to,
+                                  int classes, int size, double entropy) {
+        double subsetsEntropy = 0;
+
+        // sum of entropy of each subset
+        for (int value = from; value < to; value += classes) {
+            int subsetSize = 0;
+            for (int c = value; c < value + classes; c++)
+                subsetSize += tables[c];
+
+            subsetsEntropy += ((double) subsetSize / (double) size)
+                    * entropy(tables, value, classes, subsetSize);
+        }
+
+        // overall change in entropy from splitting on this attribute
+        return entropy - subsetsEntropy;
+    }
+
+    /**
+     * Computes the entropy of a set of examples from its class frequencies,
+     * read from frequencies[from] to frequencies[from + classes - 1].
+     *
+     * @param frequencies class frequencies
+     * @param from        index of the first class frequency
+     * @param classes     number of classes
+     * @param size        number of examples, the sum of the frequencies
+     * @return entropy of the examples
+     */
+    static double entropy(int[] frequencies, int from, int classes,
+                          int size) {
+        // entropy of empty set is trivially zero
+        if (size == 0) return 0;
+
+        double entropy = 0;
+        for (int c = from; c < from + classes; c++)
+            entropy -= xlogx((double) frequencies[c] / (double) size);
+
+        return entropy;
+    }
+
+    /**
+     * HELPER: returns the table of n log2 n for every count up to maxCount.
+     */
+    private static double[] nLogNTable(int maxCount) {
+        double[] table = new double[maxCount + 1];
+        for (int n = 1; n <= maxCount; n++)
+            table[n] = n * Math.log(n) / LOG2;
+        return table;
+    }
+
+    /**
+     * HELPER: used to compute p(x) lg p(x) for entropy
+     */
+    private static double xlogx(double x) {
+        return x == 0 ? 0 : x * Math.log(x) / LOG2;
+    }
+
+    /**
+     * HELPER: runs a task in the given pool, forking it directly when
+     * already running inside that pool.
+     */
+    private static void invoke(ForkJoinPool pool, ForkJoinTask<?> task) {
+        if (ForkJoinTask.getPool() == pool) task.invoke();
+        else pool.invoke(task);
+    }
+
+    /**
+     * Given a 2-dimensional array containing the training data, numbers each
+     * unique value that each attribute has, and stores these Strings in
+     * instance variables; for example, for attribute 2, its first value
+     * would be stored in labels[2][0], its second value in labels[2][1],
+     * and so on; and the number of different values in stringCount[2].
+     * Each labels[attr] array holds exactly stringCount[attr] labels.
+     * <p>
+     * Values are numbered through a hash map per attribute, in a single scan
+     * of each column, and the numbers are returned as the encoded columns of
+     * the training data (without the header line). When a pool has been set
+     * with setParallelIndexing(), the columns are indexed concurrently.
+     *
+     * @param inputData training data, with a header line
+     * @return label indices of the training data, one column per attribute
+     **/
+    private Column[] indexStrings(String[][] inputData) {
+        data = inputData;
+        names = data[0];
+        examples = data.length;
+        attributes = data[0].length;
+        stringCount = new int[attributes];
+        labels = new String[attributes][];
+
+        Column[] columns = new Column[attributes];
+        if (indexPool != null) {
+            List<ForkJoinTask<?>> tasks = new ArrayList<>(attributes);
+            for (int attr = 0; attr < attributes; attr++) {
+                int column = attr;
+                tasks.add(ForkJoinTask.adapt(
+                        () -> columns[column] = indexStrings(column)));
+            }
+            invoke(indexPool, ForkJoinTask.adapt(() -> {
+                ForkJoinTask.invokeAll(tasks);
+            }));
+        } else {
+            for (int attr = 0; attr < attributes; attr++)
+                columns[attr] = indexStrings(attr);
+        }
+
+        return columns;
+    }
+
+    /**
+     * Numbers the unique values of one attribute of the training data, as
+     * described for indexStrings(String[][]), and returns the numbers given
+     * to each example.
+     *
+     * @param attr attribute to index
+     * @return label indices of the attribute's values
+     */
+    private Column indexStrings(int attr) {
+        Map<String, Integer> indices = new HashMap<>();
+        List<String> values = new ArrayList<>();
+        ColumnBuilder column = new ColumnBuilder(examples - 1);
+
+        for (int ex = 1; ex < examples; ex++) {
+            Integer index = indices.get(data[ex][attr]);
+
+            // new string found
+            if (index == null) {
+                index = values.size();
+                indices.put(data[ex][attr], index);
+                values.add(data[ex][attr]);
+            }
+            column.add(index);
+        }
+
+        labels[attr] = values.toArray(new String[values.size()]);
+        stringCount[attr] = labels[attr].length;
+        return column.build();
+    }
+
+    /**
+     * DEBUGGING: prints the list of attribute values for each attribute
+     * and their index values.
+     */
+    private void printStrings() {
+        for (int attr = 0; attr < attributes; attr++)
+            for (int index = 0; index < stringCount[attr]; index++)
+                System.out.println(names[attr] + " value " + index +
+                        " = " + labels[attr][index]);
+    }
+
+    /**
+     * Reads a CSV file of training data in a single pass, and returns it as
+     * a Dataset. Values are dictionary-encoded as they are read, in order of
+     * first appearance, so that the codes and labels are the same as those
+     * indexStrings() would produce for the parsed file; names[], labels[][]
+     * and stringCount[] are set as a side effect.
+     */
+    private Dataset loadCSV(String fileName) throws IOException {
+        Path source = Paths.get(fileName);
+        Path cache = null;
+        long size = 0;
+        long modified = 0;
+        long checksum = 0;
+        if (columnCache != null) {
+            Path absolute = source.toAbsolutePath().normalize();
+            cache = columnCache.resolve(absolute.getFileName() + "."
+                    + Integer.toHexString(absolute.toString().hashCode())
+                    + ".cols");
+            size = Files.size(source);
+            modified = Files.getLastModifiedTime(source).toMillis();
+            checksum = checksum(source);
+
+            Dataset cached = loadColumns(cache, size, modified, checksum);
+            if (cached != null) return cached;
+        }
+
+        List<ColumnBuilder> columns = new ArrayList<>();
+
+        encodeCSV(fileName, (column, code) -> {
+            if (column == columns.size()) columns.add(new ColumnBuilder());
+            columns.get(column).add(code);
+        });
+
+        Column[] codes = new Column[attributes];
+        for (int f = 0; f < attributes; f++)
+            codes[f] = f < columns.size()
+                    ? columns.get(f).build() : new ColumnBuilder(0).build();
+
+        if (cache != null)
+            saveColumns(cache, size, modified, checksum, codes);
+        return new Dataset(codes, stringCount);
+    }
+
+    /**
+     * HELPER: returns the CRC-32C of the whole of a file, for loadCSV() to
+     * tell apart versions of the file that have the same size and
+     * modification time. Reading the file costs a fraction of parsing it.
+     */
+    private static long checksum(Path file) throws IOException {
+        CRC32C checksum = new CRC32C();
+        ByteBuffer block = ByteBuffer.allocateDirect(1 << 16);
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.READ)) {
+            while (channel.read(block) >= 0) {
+                block.flip();
+                checksum.update(block);
+                block.clear();
+            }
+        }
+        return checksum.getValue();
+    }
+
+    /**
+     * Writes the encoded columns of a CSV file to a cache file, for
+     * loadColumns(). The file holds, after a magic number and format
+     * version, the size, modification time and checksum() of the CSV
+     * file, the number of columns and of rows, the attribute names and the
+     * labels of every column, as save() writes them, and then the codes of
+     * each column in turn, 1, 2 or 4 bytes per row as Column.width() gives.
+     * The file is written next to the cache and moved in place, so a run
+     * reading the cache never sees it half written.
+     */
+    private void saveColumns(Path cache, long size, long modified,
+                             long checksum, Column[] columns)
+            throws IOException {
+        Files.createDirectories(cache.getParent());
+        Path written = Files.createTempFile(cache.getParent(), "id3-cols",
+                ".tmp");
+
+        try {
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(
+                            Files.newOutputStream(written), 1 << 16))) {
+                out.writeInt(CACHE_MAGIC);
+                out.writeInt(CACHE_VERSION);
+                out.writeLong(size);
+                out.writeLong(modified);
+                out.writeLong(checksum);
+
+                int rows = columns[0].size();
+                out.writeInt(attributes);
+                out.writeInt(rows);
+                for (String name : names)
+                    writeString(out, name);
+                for (int attr = 0; attr < attributes; attr++) {
+                    out.writeInt(stringCount[attr]);
+                    for (int i = 0; i < stringCount[attr]; i++)
+                        writeString(out, labels[attr][i]);
+                }
+
+                for (int attr = 0; attr < attributes; attr++) {
+                    Column column = columns[attr];
+                    int width = Column.width(stringCount[attr]);
+                    for (int row = 0; row < rows; row++) {
+                        if (width == Byte.BYTES) out.writeByte(column.get(row));
+                        else if (width == Short.BYTES)
+                            out.writeShort(column.get(row));
+                        else out.writeInt(column.get(row));
+                    }
+                }
+            }
+            Files.move(written, cache, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(written);
+        }
+    }
+
+    /**
+     * Returns the Dataset held by a cache file written by saveColumns(),
+     * with columns reading the mapped file in place, or null if there is
+     * no cache file, it was written from another version of the CSV file,
+     * or it cannot be read whole. Sets names[], labels[][], stringCount[],
+     * attributes and examples as loadCSV() does, if the cache file is used.
+     */
+    private Dataset loadColumns(Path cache, long size, long modified,
+                                long checksum) throws IOException {
+        if (!Files.isRegularFile(cache)) return null;
+
+        try (FileChannel channel = FileChannel.open(cache,
+                StandardOpenOption.READ)) {
+            ByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    Math.min(channel.size(), Integer.MAX_VALUE));
+            if (in.getInt() != CACHE_MAGIC || in.getInt() != CACHE_VERSION
+                    || in.getLong() != size || in.getLong() != modified
+                    || in.getLong() != checksum)
+                return null;
+
+            // counts are checked against the file before anything is
+            // allocated for them
+            int columnCount = in.getInt();
+            int rows = in.getInt();
+            if (columnCount < 1 || columnCount > in.remaining() / Integer.BYTES
+                    || rows < 0)
+                return null;
+            String[] columnNames = new String[columnCount];
+            for (int attr = 0; attr < columnCount; attr++)
+                columnNames[attr] = readString(in);
+            String[][] columnLabels = new String[columnCount][];
+            int[] counts = new int[columnCount];
+            for (int attr = 0; attr < columnCount; attr++) {
+                int count = in.getInt();
+                if (count < 0 || count > in.remaining() / Integer.BYTES)
+                    return null;
+                columnLabels[attr] = new String[count];
+                for (int i = 0; i < columnLabels[attr].length; i++)
+                    columnLabels[attr][i] = readString(in);
+                counts[attr] = columnLabels[attr].length;
+            }
+
+            // each column is mapped on its own, in buffers of at most 1 GB
+            Column[] columns = new Column[columnCount];
+            long offset = in.position();
+            for (int attr = 0; attr < columnCount; attr++) {
+                int width = Column.width(counts[attr]);
+                if (offset + (long) rows * width > channel.size()) return null;
+                ByteBuffer[] buffers =
+                        new ByteBuffer[BufferColumn.buffers(width, rows)];
+                for (int i = 0; i < buffers.length; i++) {
+                    int length = BufferColumn.bufferSize(width, rows, i);
+                    buffers[i] = channel.map(FileChannel.MapMode.READ_ONLY,
+                            offset, length);
+                    offset += length;
+                }
+                columns[attr] = new BufferColumn(buffers, width, rows);
+            }
+
+            attributes = columnCount;
+            examples = rows + 1;
+            names = columnNames;
+            labels = columnLabels;
+            stringCount = counts;
+            return new Dataset(columns, stringCount);
+        } catch (IOException | RuntimeException e) {
+            // damaged cache file, written again from the CSV file
+            return null;
+        }
+    }
+
+    /**
+     * Reads a CSV file of training data in a single pass, dictionary-encoding
+     * values as they are read, in order of first appearance, and passes the
+     * code of every field to the given sink, row by row. Sets names[],
+     * labels[][], stringCount[], attributes and examples as a side effect.
+     */
+    private void encodeCSV(String fileName, CodeSink sink) throws IOException {
+        try (CsvReader reader = new CsvReader(fileName)) {
+            if (!reader.next()) error("Missing header in " + fileName);
+
+            attributes = reader.fields();
+            names = new String[attributes];
+            for (int f = 0; f < attributes; f++)
+                names[f] = reader.field(f);
+
+            Dictionary[] dictionaries = new Dictionary[attributes];
+            for (int f = 0; f < attributes; f++)
+                dictionaries[f] = new Dictionary();
+
+            examples = 1;
+            while (reader.next()) {
+                reader.expect(attributes);
+                for (int f = 0; f < attributes; f++)
+                    sink.add(f, dictionaries[f].encode(reader.buffer(),
+                            reader.start(f), reader.end(f)));
+                examples++;
+            }
+
+            labels = new String[attributes][];
+            stringCount = new int[attributes];
+            for (int f = 0; f < attributes; f++) {
+                labels[f] = dictionaries[f].labels();
+                stringCount[f] = labels[f].length;
+            }
+        }
+    }
+
+    /**
+     * Receives the codes of an encoded CSV file, row by row.
+     */
+    interface CodeSink {
+        void add(int column, int code) throws IOException;
+    }
+
+    /**
+     * Reads a text file containing a fixed number of comma-separated values
+     * on each line, and returns a two dimensional array of these values,
+     * indexed by line number and position in line.
+     */
+    private static String[][] parseCSV(String fileName)
+            throws FileNotFoundException, IOException {
+        List<String[]> lines = new ArrayList<>();
+
+        try (CsvReader reader = new CsvReader(fileName)) {
+            int fields = -1;
+            while (reader.next()) {
+                if (fields < 0) fields = reader.fields();
+                else reader.expect(fields);
+
+                String[] line = new String[fields];
+                for (int f = 0; f < fields; f++)
+                    line[f] = reader.field(f);
+                lines.add(line);
+            }
+        }
+
+        return lines.toArray(new String[lines.size()][]);
+    }
+
+    /**
+     * HELPER: writes a string as its length followed by its UTF-8 bytes.
+     */
+    private static void writeString(DataOutputStream out, String s)
+            throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * HELPER: reads a string written by writeString().
+     */
+    private static String readString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0 || length > in.remaining())
+            throw new BufferUnderflowException();
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * HELPER: Print error message and exit.
+     */
+    private static void error(String msg) {
+        System.err.println("Error: " + msg);
+        System.exit(1);
+    }
+
+
+    /**
+     * Each node of the tree contains either the attribute number (for non-leaf
+     * nodes) or class number (for leaf nodes) in <b>value</b>, and an array of
+     * tree nodes in <b>children</b> containing each of the children of the
+     * node (for non-leaf nodes).
+     * The attribute number corresponds to the column number in the training
+     * and test files. The children are ordered in the same order as the
+     * Strings in labels[][]. E.g., if value == 3, then the array of
+     * children correspond to the branches for attribute 3 (named names[3]):
+     * children[0] is the branch for attribute 3 == labels[3][0]
+     * children[1] is the branch for attribute 3 == labels[3][1]
+     * children[2] is the branch for attribute 3 == labels[3][2]
+     * etc.
+     * The class number (leaf nodes) also corresponds to the order of classes
+     * in labels[][]. For example, a leaf with value == 3 corresponds
+     * to the class label labels[attributes-1][3].
+     */
+    class TreeNode {
+        TreeNode[] children;
+        int value;
+        NodeCounts counts;      // kept for update() in incremental mode
+
+
+        public TreeNode(TreeNode[] ch, int val) {
+            value = val;
+            children = ch;
+        }
+
+
+        @Override
+        public String toString() {
+            return toString("");
+        }
+
+        /**
+         * Returns the depth of the deepest leaf below this node, this node
+         * being at depth 0.
+         */
+        int depth() {
+            int depth = 0;
+            if (children != null)
+                for (TreeNode child : children)
+                    depth = Math.max(depth, child.depth() + 1);
+            return depth;
+        }
+
+        String toString(String indent) {
+            if (children != null) {
+                StringBuilder s = new StringBuilder();
+                for (int i = 0; i < children.length; i++) {
+                    s.append(indent)
+                            .append(names[value])
+                            .append("=")
+                            .append(labels[value][i])
+                            .append("\n")
+                            .append(children[i].toString(indent + '\t'));
+                }
+                return s.toString();
+            } else {
+                return indent + "Class: " + labels[attributes - 1][value] + "\n";
+            }
+        }
+    }
+
+
+    /**
+     * A decision tree flattened into primitive arrays for classification.
+     * Node 0 is the root; for a leaf, tests[node] is -1 and targets[node]
+     * is its class, while for an inner node tests[node] is the attribute it
+     * tests and the child for value code v is node targets[node] + v.
+     * <p>
+     * Attribute values are mapped to codes by a LabelTable built once per
+     * attribute. As in earlier versions of the classifier, values are
+     * compared after trimming surrounding whitespace.
+     */
+    static final class CompiledTree {
+        final int[] tests;
+        final int[] targets;
+        private final LabelTable[] branches;
+
+
+        /**
+         * Constructs a compiled tree from its node arrays and the labels of
+         * the attributes, as produced by indexStrings().
+         *
+         * @param tests       attribute tested at each node, -1 for leaves
+         * @param targets     first child of each inner node, class of leaves
+         * @param labels      attribute and class labels
+         * @param stringCount number of labels for each attribute and class
+         */
+        CompiledTree(int[] tests, int[] targets, String[][] labels,
+                     int[] stringCount) {
+            this.tests = tests;
+            this.targets = targets;
+
+            branches = new LabelTable[labels.length - 1];
+            for (int attr = 0; attr < branches.length; attr++)
+                branches[attr] = new LabelTable(labels[attr],
+                        stringCount[attr]);
+        }
+
+
+        /**
+         * Returns the class of the given data point.
+         *
+         * @param example data point, indexed by attribute
+         * @return class index, or -1 if the data point has an attribute
+         * value that was not seen in training
+         */
+        int classify(String[] example) {
+            int node = 0;
+            while (tests[node] >= 0) {
+                int code = branches[tests[node]]
+                        .code(example[tests[node]].trim());
+                if (code < 0) return -1;
+                node = targets[node] + code;
+            }
+            return targets[node];
+        }
+
+        /**
+         * Writes the code of each attribute value of the given data point to
+         * codes[], or -1 for a value that was not seen in training.
+         *
+         * @param example data point, indexed by attribute
+         * @param codes   array of one code per attribute
+         */
+        void encode(String[] example, int[] codes) {
+            for (int attr = 0; attr < branches.length; attr++)
+                codes[attr] = branches[attr].code(example[attr].trim());
+        }
+
+        /**
+         * Returns the class of a data point encoded by encode().
+         *
+         * @param codes code of each attribute value of the data point
+         * @return class index, or -1 if the data point has an attribute
+         * value that was not seen in training
+         */
+        int classify(int[] codes) {
+            int node = 0;
+            while (tests[node] >= 0) {
+                int code = codes[tests[node]];
+                if (code < 0) return -1;
+                node = targets[node] + code;
+            }
+            return targets[node];
+        }
+
+        /**
+         * Returns the number of nodes in the tree.
+         *
+         * @return number of nodes
+         */
+        int size() {
+            return tests.length;
+        }
+    }
+
+
+    /**
+     * The codes of the labels of one attribute, for classification. The
+     * labels are kept in an open-addressing hash table, an array of Strings
+     * beside an array of their codes, at most half full, so that a lookup
+     * is the label's hash, a probe or two and an equals(), with no entry
+     * to follow and no Integer to unbox, unlike a HashMap. Labels are
+     * trimmed, and the first of those trimming to the same value keeps it.
+     */
+    static final class LabelTable {
+        private final String[] keys;
+        private final int[] codes;
+        private final int mask;
+
+
+        /**
+         * Builds the table of the first count labels, each coded by its
+         * index.
+         *
+         * @param labels labels of an attribute
+         * @param count  number of labels
+         */
+        LabelTable(String[] labels, int count) {
+            int capacity = Integer.highestOneBit(Math.max(count, 1) * 2) * 2;
+            keys = new String[capacity];
+            codes = new int[capacity];
+            mask = capacity - 1;
+
+            for (int code = 0; code < count; code++) {
+                String key = labels[code].trim();
+                int slot = slot(key);
+                if (keys[slot] == null) {
+                    keys[slot] = key;
+                    codes[slot] = code;
+                }
+            }
+        }
+
+
+        /**
+         * Returns the code of a label, or -1 if it is not in the table.
+         *
+         * @param label trimmed label
+         * @return code of the label, or -1
+         */
+        int code(String label) {
+            int slot = slot(label);
+            return keys[slot] != null ? codes[slot] : -1;
+        }
+
+        /**
+         * HELPER: returns the slot holding the given label, or the empty
+         * slot where it would be.
+         */
+        private int slot(String label) {
+            int hash = label.hashCode();
+            int slot = (hash ^ hash >>> 16) & mask;
+            while (keys[slot] != null && !keys[slot].equals(label))
+                slot = (slot + 1) & mask;
+            return slot;
+        }
+    }
+
+
+    /**
+     * Receives figures about the work of a classifier, as set with
+     * setListener(). Methods are called on the thread that trained or
+     * classified, once the work is done.
+     */
+    public interface Listener {
+
+        /**
+         * Called after training, including out-of-core training, and after
+         * each update().
+         *
+         * @param stats figures of the training run
+         */
+        default void trained(TrainingStats stats) {
+        }
+
+        /**
+         * Called after each call to classify() or predict().
+         *
+         * @param examples number of examples classified
+         * @param nanos    time taken, in nanoseconds
+         */
+        default void classified(int examples, long nanos) {
+        }
+    }
+
+
+    /**
+     * Figures about one training run, or one update(), telling where its
+     * time went. Figures per depth are indexed by the depth of the nodes in
+     * the tree, the root being at depth 0; the time of a node covers
+     * counting its examples and choosing and making its split, but not
+     * growing its children, so times add up across threads when subtrees
+     * are grown in parallel. Rows scanned are the examples counted into
+     * contingency tables; a node whose tables are derived from its parent's
+     * scans none, and out-of-core training counts every node of a level.
+     * Passes are the scans of every example made by out-of-core and
+     * distributed training, which count a level in as many passes as
+     * setOutOfCoreBudget() requires; training in memory makes none.
+     */
+    public static final class TrainingStats {
+        private final int examples;
+        private final String[] names;
+        private final int[] cardinalities;
+        private final long[] nodes;
+        private final long[] rows;
+        private final long[] passes;
+        private final long[] nanos;
+        private long gainEvaluations;
+        private long exactGainEvaluations;
+        private int treeSize;
+        private int treeDepth;
+        private final long start;
+        private long duration;
+
+
+        TrainingStats(int examples, String[] names, int[] stringCount) {
+            this.examples = examples;
+            this.names = names.clone();
+            this.cardinalities = stringCount.clone();
+            nodes = new long[stringCount.length];
+            rows = new long[stringCount.length];
+            passes = new long[stringCount.length];
+            nanos = new long[stringCount.length];
+            start = System.nanoTime();
+        }
+
+
+        /**
+         * Returns the number of examples trained on, or added by update().
+         */
+        public int examples() {
+            return examples;
+        }
+
+        /**
+         * Returns the names of the attributes, the class being last.
+         */
+        public String[] names() {
+            return names.clone();
+        }
+
+        /**
+         * Returns the number of distinct values of each attribute, the
+         * number of classes being last.
+         */
+        public int[] cardinalities() {
+            return cardinalities.clone();
+        }
+
+        /**
+         * Returns the number of nodes of the learnt tree, leaves included.
+         */
+        public int treeSize() {
+            return treeSize;
+        }
+
+        /**
+         * Returns the depth of the learnt tree, a single leaf having depth 0.
+         */
+        public int treeDepth() {
+            return treeDepth;
+        }
+
+        /**
+         * Returns the number of nodes decided at each depth. Leaves for
+         * empty branches are not decided, so are not counted, and update()
+         * only counts the nodes of the subtrees it rebuilds.
+         */
+        public long[] nodesPerDepth() {
+            return nodes.clone();
+        }
+
+        /**
+         * Returns the number of rows scanned at each depth.
+         */
+        public long[] rowsScannedPerDepth() {
+            return rows.clone();
+        }
+
+        /**
+         * Returns the number of passes over the examples made at each depth.
+         */
+        public long[] passesPerDepth() {
+            return passes.clone();
+        }
+
+        /**
+         * Returns the time spent on the nodes of each depth, in nanoseconds.
+         */
+        public long[] nanosPerDepth() {
+            return nanos.clone();
+        }
+
+        /**
+         * Returns the number of candidate attributes evaluated for a split.
+         */
+        public long gainEvaluations() {
+            return gainEvaluations;
+        }
+
+        /**
+         * Returns the number of candidate attributes whose information gain
+         * was computed exactly, rather than only ranked from the n log n
+         * table.
+         */
+        public long exactGainEvaluations() {
+            return exactGainEvaluations;
+        }
+
+        /**
+         * Returns the duration of the training run, in nanoseconds.
+         */
+        public long nanos() {
+            return duration;
+        }
+
+        @Override
+        public String toString() {
+            return "Trained on " + examples + " examples in "
+                    + duration / 1000000 + " ms: " + treeSize + " nodes, depth "
+                    + treeDepth + ", " + gainEvaluations + " gain evaluations ("
+                    + exactGainEvaluations + " exact)\n"
+                    + "Nodes per depth: " + Arrays.toString(nodes) + "\n"
+                    + "Rows scanned per depth: " + Arrays.toString(rows) + "\n"
+                    + "Passes per depth: " + Arrays.toString(passes) + "\n"
+                    + "Nanoseconds per depth: " + Arrays.toString(nanos);
+        }
+
+        /**
+         * Returns empty figures of the same shape, to be collected by one
+         * thread and then added to these.
+         */
+        TrainingStats part() {
+            return new TrainingStats(0, names, cardinalities);
+        }
+
+        /**
+         * Adds the figures collected by another thread.
+         */
+        synchronized void add(TrainingStats part) {
+            for (int depth = 0; depth < nodes.length; depth++) {
+                nodes[depth] += part.nodes[depth];
+                rows[depth] += part.rows[depth];
+                passes[depth] += part.passes[depth];
+                nanos[depth] += part.nanos[depth];
+            }
+            gainEvaluations += part.gainEvaluations;
+            exactGainEvaluations += part.exactGainEvaluations;
+        }
+
+        void built(int depth, int count, long time) {
+            nodes[depth] += count;
+            nanos[depth] += time;
+        }
+
+        void scanned(int depth, int count) {
+            rows[depth] += count;
+        }
+
+        void passed(int depth) {
+            passes[depth]++;
+        }
+
+        void evaluated(int candidates, int exact) {
+            gainEvaluations += candidates;
+            exactGainEvaluations += exact;
+        }
+
+        /**
+         * Records the shape of the learnt tree, and ends the run.
+         */
+        void finish(int size, int depth) {
+            treeSize = size;
+            treeDepth = depth;
+            duration = System.nanoTime() - start;
+        }
+    }
+
+
+    /**
+     * Result of a k-fold cross-validation: the confusion matrix of each
+     * fold, from which accuracies are derived. Matrices are indexed as
+     * [actual class][predicted class], in the order of classes().
+     */
+    public static final class CrossValidation {
+        private final String[] classes;
+        private final int[][][] confusion;
+
+
+        CrossValidation(String[] classes, int[][][] confusion) {
+            this.classes = classes.clone();
+            this.confusion = confusion;
+        }
+
+
+        /**
+         * Returns the number of folds.
+         */
+        public int folds() {
+            return confusion.length;
+        }
+
+        /**
+         * Returns the class labels, in the order of the confusion matrices.
+         */
+        public String[] classes() {
+            return classes.clone();
+        }
+
+        /**
+         * Returns the confusion matrix of the given fold.
+         *
+         * @param fold fold index, from 0
+         * @return counts of the fold's examples, as [actual][predicted]
+         */
+        public int[][] confusionMatrix(int fold) {
+            int[][] matrix = new int[classes.length][];
+            for (int c = 0; c < classes.length; c++)
+                matrix[c] = confusion[fold][c].clone();
+            return matrix;
+        }
+
+        /**
+         * Returns the sum of the confusion matrices of all folds, in which
+         * every example is counted once.
+         */
+        public int[][] confusionMatrix() {
+            int[][] matrix = new int[classes.length][classes.length];
+            for (int[][] fold : confusion)
+                for (int c = 0; c < classes.length; c++)
+                    for (int p = 0; p < classes.length; p++)
+                        matrix[c][p] += fold[c][p];
+            return matrix;
+        }
+
+        /**
+         * Returns the fraction of the given fold's examples classified
+         * correctly.
+         *
+         * @param fold fold index, from 0
+         * @return accuracy of the fold
+         */
+        public double accuracy(int fold) {
+            return accuracy(confusion[fold]);
+        }
+
+        /**
+         * Returns the fraction of all examples classified correctly by the
+         * model of their fold.
+         */
+        public double accuracy() {
+            return accuracy(confusionMatrix());
+        }
+
+        @Override
+        public String toString() {
+            int[][] matrix = confusionMatrix();
+            StringBuilder s = new StringBuilder(String.format(
+                    "%d-fold cross-validation: accuracy %.4f%n",
+                    confusion.length, accuracy(matrix)));
+            for (int fold = 0; fold < confusion.length; fold++)
+                s.append(String.format("Fold %d: accuracy %.4f%n",
+                        fold, accuracy(fold)));
+            s.append("Confusion matrix (rows actual, columns predicted):\n");
+            for (String cls : classes)
+                s.append('\t').append(cls);
+            for (int c = 0; c < classes.length; c++) {
+                s.append('\n').append(classes[c]);
+                for (int count : matrix[c])
+                    s.append('\t').append(count);
+            }
+            return s.toString();
+        }
+
+        /**
+         * HELPER: fraction of the examples of a confusion matrix on its
+         * diagonal.
+         */
+        private static double accuracy(int[][] matrix) {
+            long correct = 0;
+            long total = 0;
+            for (int c = 0; c < matrix.length; c++) {
+                correct += matrix[c][c];
+                for (int count : matrix[c])
+                    total += count;
+            }
+            return total == 0 ? 0 : (double) correct / total;
+        }
+    }
+
+
+    /**
+     * Flight Recorder event for a training run, or an update(); its
+     * duration covers growing the tree, but not reading the data.
+     */
+    @Name("id3.Training")
+    @Label("ID3 Training")
+    @Category("ID3")
+    @Description("Decision tree learnt from a training set")
+    static final class TrainingEvent extends Event {
+        @Label("Examples")
+        int examples;
+        @Label("Attributes")
+        int attributes;
+        @Label("Widest Attribute")
+        @Description("Attribute with the most distinct values")
+        String widestAttribute;
+        @Label("Widest Cardinality")
+        int widestCardinality;
+        @Label("Tree Size")
+        int treeSize;
+        @Label("Tree Depth")
+        int treeDepth;
+        @Label("Gain Evaluations")
+        long gainEvaluations;
+        @Label("Exact Gain Evaluations")
+        long exactGainEvaluations;
+    }
+
+
+    /**
+     * Flight Recorder event for the nodes of one depth of a training run,
+     * committed when the run ends.
+     */
+    @Name("id3.TrainingDepth")
+    @Label("ID3 Training Depth")
+    @Category("ID3")
+    @Description("Work done on the nodes of one depth of a learnt tree")
+    static final class TrainingDepthEvent extends Event {
+        @Label("Depth")
+        int depth;
+        @Label("Nodes")
+        long nodes;
+        @Label("Rows Scanned")
+        long rowsScanned;
+        @Label("Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long time;
+    }
+
+
+    /**
+     * Flight Recorder event for a call to classify() or predict().
+     */
+    @Name("id3.Classification")
+    @Label("ID3 Classification")
+    @Category("ID3")
+    @Description("Batch of examples classified by a decision tree")
+    static final class ClassificationEvent extends Event {
+        @Label("Examples")
+        int examples;
+    }
+
+
+    /**
+     * Holds the n log2 n table of the default size, which the JVM builds
+     * the first time a classifier ranks splits with it.
+     */
+    private static final class EntropyTable {
+        static final double[] SHARED = nLogNTable(ENTROPY_TABLE_SIZE);
+    }
+
+
+    /**
+     * The counts kept at a node of a tree trained in incremental mode: the
+     * class frequencies of the node's examples and the contingency table of
+     * each attribute left to test at the node, as returned by
+     * Dataset.contingencyTables(). Leaves also keep their examples, as row
+     * numbers of the training data, from which changed subtrees are rebuilt.
+     */
+    static final class NodeCounts {
+        int[] classCounts;
+        int[][] tables;
+        int[] rows;
+        int size;
+
+
+        /**
+         * Counts the examples of a node.
+         *
+         * @param dataset          the node's examples
+         * @param attributeIndices remaining attributes for splitting
+         * @param leaf             true if the examples are kept
+         */
+        NodeCounts(Dataset dataset, List<Integer> attributeIndices,
+                   boolean leaf) {
+            classCounts = dataset.classFrequencies();
+            tables = dataset.contingencyTables(attributeIndices);
+            if (leaf) {
+                rows = dataset.rows();
+                size = rows.length;
+            }
+        }
+
+
+        /**
+         * Adds new examples of the node to the counts. Tables of attributes
+         * that gained values since the node was counted are widened first.
+         *
+         * @param added            the new examples
+         * @param attributeIndices remaining attributes for splitting
+         */
+        void add(Dataset added, List<Integer> attributeIndices) {
+            int[] frequencies = added.classFrequencies();
+            for (int c = 0; c < classCounts.length; c++)
+                classCounts[c] += frequencies[c];
+
+            int[][] addedTables = added.contingencyTables(attributeIndices);
+            for (int i = 0; i < tables.length; i++) {
+                if (tables[i].length < addedTables[i].length)
+                    tables[i] = Arrays.copyOf(tables[i], addedTables[i].length);
+                for (int j = 0; j < addedTables[i].length; j++)
+                    tables[i][j] += addedTables[i][j];
+            }
+        }
+
+        /**
+         * Stores new examples of a leaf.
+         *
+         * @param added row numbers of the new examples
+         */
+        void addRows(int[] added) {
+            if (size + added.length > rows.length)
+                rows = Arrays.copyOf(rows,
+                        Math.max(size + added.length, rows.length * 2));
+            System.arraycopy(added, 0, rows, size, added.length);
+            size += added.length;
+        }
+    }
+
+
+    /**
+     * The Dataset class partially abstracts the details of classes, attributes,
+     * examples, and their handling during the training phase. Its purpose is
+     * to make the implementation of the ID3 algorithm more legible.
+     * <p>
+     * A Dataset represents a collection of example data points, and a set of
+     * attributes and classes defining the space within which those data points
+     * reside. A Dataset object provides methods for querying the dataset's
+     * properties and manipulating it. In particular, the counting of a
+     * dataset's classes and contingency tables, as well as the splitting of a
+     * dataset into subsets based on some attribute are implemented in this
+     * class.
+     * <p>
+     * The data is stored column by column: every attribute, and the class,
+     * is dictionary-encoded once into a {@link Column} of integer codes,
+     * where the code of a value is its index in labels[][]. The examples of
+     * a dataset are the range [from, to) of an array of row numbers into
+     * these columns. Splitting partitions that range in place, like
+     * quicksort, so all datasets obtained by splitting share the columns and
+     * the array of row numbers, each subset being a range of its parent's.
+     * Methods taking a range work on that range of the array directly, so
+     * that id3() can split without creating subsets.
+     */
+    private static class Dataset {
+        private static final HistogramKernel HISTOGRAMS =
+                HistogramKernel.preferred();
+
+        private Column[] attributes;
+        private Column classes;
+        private int[] cardinalities;
+        private int classCount;
+        private Column rows;
+        private int from;
+        private int to;
+
+
+        /**
+         * Constructs a Dataset spanning every row of the given encoded
+         * columns, the last of which holds the class.
+         *
+         * @param columns     attribute and class codes
+         * @param stringCount number of labels for each attribute and class
+         */
+        Dataset(Column[] columns, int[] stringCount) {
+            this(columns, stringCount,
+                    new IntColumn(IntStream.range(0,
+                            columns[columns.length - 1].size()).toArray()));
+        }
+
+        /**
+         * Constructs a Dataset selecting the given rows of the given encoded
+         * columns, the last of which holds the class. The row numbers are
+         * held in a column of their own, which is partitioned in place as
+         * the tree is grown.
+         *
+         * @param columns     attribute and class codes
+         * @param stringCount number of labels for each attribute and class
+         * @param rows        row numbers of the selected rows
+         */
+        Dataset(Column[] columns, int[] stringCount, Column rows) {
+            int classIndex = columns.length - 1;
+
+            attributes = Arrays.copyOf(columns, classIndex);
+            classes = columns[classIndex];
+            cardinalities = Arrays.copyOf(stringCount, classIndex);
+            classCount = stringCount[classIndex];
+            this.rows = rows;
+            to = rows.size();
+        }
+
+        /**
+         * Private constructor for internal use.
+         *
+         * @param parent dataset whose columns are shared
+         * @param rows   rows of the columns selected by this dataset
+         */
+        private Dataset(Dataset parent, int[] rows) {
+            this(parent, new IntColumn(rows), 0, rows.length);
+        }
+
+        /**
+         * Private constructor for internal use.
+         *
+         * @param parent dataset whose columns are shared
+         * @param rows   column of row numbers
+         * @param from   index of the first row selected by this dataset
+         * @param to     index after the last row selected by this dataset
+         */
+        private Dataset(Dataset parent, Column rows, int from, int to) {
+            this.attributes = parent.attributes;
+            this.classes = parent.classes;
+            this.cardinalities = parent.cardinalities;
+            this.classCount = parent.classCount;
+            this.rows = rows;
+            this.from = from;
+            this.to = to;
+        }
+
+
+        /**
+         * Returns the size of the data set.
+         *
+         * @return number of examples in data set
+         */
+        int size() {
+            return to - from;
+        }
+
+        /**
+         * Returns true if the data set contains no examples.
+         *
+         * @return true if empty, false otherwise
+         */
+        boolean isEmpty() {
+            return to == from;
+        }
+
+        /**
+         * Returns the number of attributes in the data set.
+         *
+         * @return number of attributes in data set
+         */
+        int attributesSize() {
+            return attributes.length;
+        }
+
+        /**
          * Returns the number of classes in this dataset
          *
-         * @return number of classes
+         * @return number of classes
+         */
+        int classesSize() {
+            return classCount;
+        }
+
+        /**
+         * Returns a copy of the row numbers of the dataset's examples.
+         *
+         * @return rows of the columns selected by this dataset
+         */
+        int[] rows() {
+            int[] selected = new int[to - from];
+            for (int i = 0; i < selected.length; i++)
+                selected[i] = rows.get(from + i);
+            return selected;
+        }
+
+        /**
+         * Returns new datasets obtained by splitting the current dataset
+         * by its values for the given attribute. The dataset's rows are
+         * partitioned in place, and each new dataset selects a range of
+         * them.
+         *
+         * @param attributeIndex the attribute to use for splitting
+         * @return list of new datasets
+         */
+        List<Dataset> splitByAttribute(int attributeIndex) {
+            Column column = attributes[attributeIndex];
+            int branches = cardinalities[attributeIndex];
+            int[] bounds = new int[branches + 1];
+
+            // size the subsets before partitioning
+            for (int i = from; i < to; i++)
+                bounds[column.get(rows.get(i)) + 1]++;
+            bounds[0] = from;
+            for (int i = 0; i < branches; i++)
+                bounds[i + 1] += bounds[i];
+
+            partition(attributeIndex, bounds, branches, new int[branches]);
+
+            List<Dataset> result = new ArrayList<>(branches);
+            for (int i = 0; i < branches; i++)
+                result.add(new Dataset(this, rows, bounds[i], bounds[i + 1]));
+
+            return result;
+        }
+
+        /**
+         * Partitions a range of rows in place by their values for the given
+         * attribute, so that the rows taking value v end up in the range
+         * [bounds[v], bounds[v + 1]). The range partitioned is
+         * [bounds[0], bounds[branches]), and the bounds must match the
+         * number of rows taking each value; the order of the rows within a
+         * subset is not kept.
+         *
+         * @param attributeIndex the attribute to use for splitting
+         * @param bounds         start of each subset, then the end of the last
+         * @param branches       number of values of the attribute
+         * @param cursors        scratch space for at least branches indices
+         */
+        void partition(int attributeIndex, int[] bounds, int branches,
+                       int[] cursors) {
+            Column column = attributes[attributeIndex];
+            System.arraycopy(bounds, 0, cursors, 0, branches);
+
+            // swap each misplaced row into the next free slot of its subset
+            for (int value = 0; value < branches; value++) {
+                int end = bounds[value + 1];
+                while (cursors[value] < end) {
+                    int row = rows.get(cursors[value]);
+                    int code = column.get(row);
+                    if (code == value) {
+                        cursors[value]++;
+                    } else {
+                        rows.set(cursors[value], rows.get(cursors[code]));
+                        rows.set(cursors[code]++, row);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Returns, for each of the given attributes, a contingency table
+         * counting the examples of each class that take each value of the
+         * attribute. All tables are filled in a single scan over the
+         * dataset; the table for an attribute is indexed as
+         * [value * classesSize() + class].
+         *
+         * @param attributeIndices attributes to count
+         * @return one table per attribute, in the order given
+         */
+        int[][] contingencyTables(List<Integer> attributeIndices) {
+            int[] candidates = new int[attributeIndices.size()];
+            int[] offsets = new int[candidates.length + 1];
+            for (int i = 0; i < candidates.length; i++) {
+                candidates[i] = attributeIndices.get(i);
+                offsets[i + 1] = offsets[i]
+                        + cardinalities[candidates[i]] * classCount;
+            }
+
+            int[] counts = new int[offsets[candidates.length]];
+            contingencyTables(from, to, candidates, 0, candidates.length,
+                    offsets, counts, null);
+
+            int[][] tables = new int[candidates.length][];
+            for (int i = 0; i < tables.length; i++)
+                tables[i] = Arrays.copyOfRange(
+                        counts, offsets[i], offsets[i + 1]);
+
+            return tables;
+        }
+
+        /**
+         * Counts the contingency tables of the attributes candidates[first]
+         * to candidates[last - 1] over a range of rows, in a single scan.
+         * The table of candidates[i] is written to tables[], from index
+         * offsets[i] to offsets[i + 1] - 1, as [value * classesSize() +
+         * class]; the rest of tables[] is left untouched.
+         * <p>
+         * Ranges of at least HISTOGRAM_ROWS rows are counted a chunk of rows
+         * at a time, attribute by attribute: the keys of a chunk are
+         * gathered into a byte array and counted by the histogram kernel,
+         * for the attributes whose tables have at most HISTOGRAM_CELLS
+         * cells. The chunk is gathered into the given buffers.
+         *
+         * @param from       index of the first row to count
+         * @param to         index after the last row to count
+         * @param candidates attributes to count
+         * @param first      position of the first attribute to count
+         * @param last       position after the last attribute to count
+         * @param offsets    start of each attribute's table
+         * @param tables     contingency tables to fill
+         * @param chunk      buffers of a chunk, or null to allocate them
+         */
+        void contingencyTables(int from, int to, int[] candidates, int first,
+                               int last, int[] offsets, int[] tables,
+                               Chunk chunk) {
+            Arrays.fill(tables, offsets[first], offsets[last], 0);
+            if (to - from >= HISTOGRAM_ROWS) {
+                histogramTables(from, to, candidates, first, last, offsets,
+                        tables, chunk != null ? chunk : new Chunk());
+                return;
+            }
+
+            for (int i = from; i < to; i++) {
+                int row = rows.get(i);
+                int cls = classes.get(row);
+                for (int j = first; j < last; j++)
+                    tables[offsets[j] + attributes[candidates[j]].get(row)
+                            * classCount + cls]++;
+            }
+        }
+
+        /**
+         * Adds the given number of rows, drawn at random with replacement
+         * from a range of rows, to the contingency tables of the attributes
+         * candidates[0] to candidates[count - 1], laid out as
+         * contingencyTables() lays them out.
+         *
+         * @param from       index of the first row to draw from
+         * @param to         index after the last row to draw from
+         * @param draws      number of rows to draw
+         * @param random     source of the draws
+         * @param candidates attributes to count
+         * @param count      number of attributes to count
+         * @param offsets    start of each attribute's table
+         * @param tables     contingency tables to add to
+         */
+        void sampleTables(int from, int to, int draws, SplittableRandom random,
+                          int[] candidates, int count, int[] offsets,
+                          int[] tables) {
+            for (int i = 0; i < draws; i++) {
+                int row = rows.get(random.nextInt(from, to));
+                int cls = classes.get(row);
+                for (int j = 0; j < count; j++)
+                    tables[offsets[j] + attributes[candidates[j]].get(row)
+                            * classCount + cls]++;
+            }
+        }
+
+        /**
+         * Counts the number of examples of each class in a range of rows.
+         * Ranges of at least HISTOGRAM_ROWS rows are counted a chunk at a
+         * time through the histogram kernel, as contingencyTables() counts
+         * them.
+         *
+         * @param from        index of the first row to count
+         * @param to          index after the last row to count
+         * @param frequencies filled with the frequency of each class
+         * @param chunk       buffers of a chunk, or null to allocate them
+         */
+        void countClasses(int from, int to, int[] frequencies, Chunk chunk) {
+            Arrays.fill(frequencies, 0);
+            if (to - from < HISTOGRAM_ROWS || classCount > HISTOGRAM_CELLS) {
+                for (int i = from; i < to; i++)
+                    frequencies[classes.get(rows.get(i))]++;
+                return;
+            }
+
+            byte[] keys = (chunk != null ? chunk : new Chunk()).keys;
+            for (int start = from; start < to; start += HISTOGRAM_ROWS) {
+                int n = Math.min(HISTOGRAM_ROWS, to - start);
+                for (int i = 0; i < n; i++)
+                    keys[i] = (byte) classes.get(rows.get(start + i));
+                HISTOGRAMS.count(keys, n, classCount, frequencies, 0);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "\nDATASET ("
+                    + size() + " examples, "
+                    + classesSize() + "classes, "
+                    + attributesSize() + " attributes):\n"
+                    + "Cardinalities: " + Arrays.toString(cardinalities) + "\n"
+                    + "Rows: " + Arrays.toString(rows()) + "\n"
+                    + "=======================================================";
+        }
+
+        /**
+         * HELPER: counts the number of examples of each class in the dataset.
+         */
+        private int[] classFrequencies() {
+            int[] frequencies = new int[classCount];
+            countClasses(from, to, frequencies, null);
+            return frequencies;
+        }
+
+        /**
+         * HELPER: counts contingency tables, zeroed by the caller, a chunk
+         * of rows at a time, through the histogram kernel where the tables
+         * are small enough.
+         */
+        private void histogramTables(int from, int to, int[] candidates,
+                                     int first, int last, int[] offsets,
+                                     int[] tables, Chunk buffers) {
+            int[] chunk = buffers.rows;
+            int[] chunkClasses = buffers.classes;
+            byte[] keys = buffers.keys;
+
+            for (int start = from; start < to; start += HISTOGRAM_ROWS) {
+                int n = Math.min(HISTOGRAM_ROWS, to - start);
+                for (int i = 0; i < n; i++) {
+                    chunk[i] = rows.get(start + i);
+                    chunkClasses[i] = classes.get(chunk[i]);
+                }
+
+                for (int j = first; j < last; j++) {
+                    Column column = attributes[candidates[j]];
+                    int cells = cardinalities[candidates[j]] * classCount;
+                    if (cells > HISTOGRAM_CELLS) {
+                        for (int i = 0; i < n; i++)
+                            tables[offsets[j] + column.get(chunk[i])
+                                    * classCount + chunkClasses[i]]++;
+                        continue;
+                    }
+                    for (int i = 0; i < n; i++)
+                        keys[i] = (byte) (column.get(chunk[i]) * classCount
+                                + chunkClasses[i]);
+                    HISTOGRAMS.count(keys, n, cells, tables, offsets[j]);
+                }
+            }
+        }
+
+    }
+
+
+    /**
+     * Builds the subtree for a range of rows of the training data by
+     * executing id3 on it. Subtrees of sibling nodes are independent of each
+     * other, and their rows disjoint ranges of the dataset, so they can be
+     * forked as separate tasks when training in parallel. Each task grows
+     * its subtree with a workspace of its own.
+     */
+    private class Subtree extends RecursiveTask<TreeNode> {
+        private static final long serialVersionUID = 1L;
+
+        private final Dataset dataset;
+        private final int from;
+        private final int to;
+        private final int[] candidates;
+        private final int depth;
+        private final Limits limits;
+
+
+        Subtree(Dataset dataset, int from, int to, int[] candidates,
+                int depth, Limits limits) {
+            this.dataset = dataset;
+            this.from = from;
+            this.to = to;
+            this.candidates = candidates;
+            this.depth = depth;
+            this.limits = limits;
+        }
+
+
+        @Override
+        protected TreeNode compute() {
+            Workspace workspace = new Workspace(dataset, candidates, depth);
+            workspace.limits = limits;
+            TrainingStats stats = trainingStats;
+            if (stats != null) workspace.stats = stats.part();
+
+            TreeNode node = id3(dataset, from, to, workspace, depth);
+            if (stats != null) stats.add(workspace.stats);
+            return node;
+        }
+    }
+
+
+    /**
+     * Classifies a range of a batch of data points for predict(). When run
+     * in a ForkJoinPool the range is halved recursively down to VOTE_BATCH
+     * data points, so that the trees of an ensemble vote on parts of the
+     * batch concurrently.
+     */
+    private class Vote extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final String[][] examples;
+        private final int[] classes;
+        private final int from;
+        private final int to;
+
+
+        Vote(String[][] examples, int[] classes, int from, int to) {
+            this.examples = examples;
+            this.classes = classes;
+            this.from = from;
+            this.to = to;
+        }
+
+
+        @Override
+        protected void compute() {
+            if (to - from <= VOTE_BATCH || !inForkJoinPool()) {
+                int[] votes = new int[stringCount[attributes - 1]];
+                int[] codes = new int[attributes - 1];
+                for (int i = from; i < to; i++)
+                    classes[i] = classify(examples[i], votes, codes);
+            } else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new Vote(examples, classes, from, middle),
+                        new Vote(examples, classes, middle, to));
+            }
+        }
+    }
+
+
+    /**
+     * Counts the contingency tables of a range of candidate attributes for a
+     * range of rows, as Dataset.contingencyTables() does. When run in a
+     * ForkJoinPool the range of candidates is halved recursively, so the
+     * candidate attributes are counted by concurrent tasks, each into its
+     * own part of tables[]; the caller scores the attributes once all tasks
+     * are done. A task counting one candidate gathers the rows of large
+     * nodes into the chunk buffers of that candidate's position, so that
+     * concurrent tasks do not share buffers.
+     */
+    private static class SplitSearch extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Dataset dataset;
+        private final int from;
+        private final int to;
+        private final int[] candidates;
+        private final int[] offsets;
+        private final int[] tables;
+        private final int first;
+        private final int last;
+        private final Chunk[] chunks;
+
+
+        SplitSearch(Dataset dataset, int from, int to, int[] candidates,
+                    int[] offsets, int[] tables, int first, int last,
+                    Chunk[] chunks) {
+            this.dataset = dataset;
+            this.from = from;
+            this.to = to;
+            this.candidates = candidates;
+            this.offsets = offsets;
+            this.tables = tables;
+            this.first = first;
+            this.last = last;
+            this.chunks = chunks;
+        }
+
+
+        @Override
+        protected void compute() {
+            if (last - first <= 1) {
+                dataset.contingencyTables(from, to, candidates, first, last,
+                        offsets, tables, chunks[first]);
+            } else {
+                int middle = (first + last) >>> 1;
+                invokeAll(
+                        new SplitSearch(dataset, from, to, candidates,
+                                offsets, tables, first, middle, chunks),
+                        new SplitSearch(dataset, from, to, candidates,
+                                offsets, tables, middle, last, chunks));
+            }
+        }
+    }
+
+
+    /**
+     * Limits of the growth of one tree, as set by setLimits(). The node
+     * count is shared by the threads growing the tree, and the deadline by
+     * the trees of a training run.
+     */
+    static final class Limits {
+        private final int maxDepth;
+        private final int minSplitRows;
+        private final double minGain;
+        private final int maxNodes;
+        private final long deadline;        // System.nanoTime(), 0 for none
+        private final AtomicInteger nodes;  // nodes the tree may still add
+
+
+        Limits(int maxDepth, int minSplitRows, double minGain, int maxNodes,
+               long deadline) {
+            this.maxDepth = maxDepth > 0 ? maxDepth : Integer.MAX_VALUE;
+            this.minSplitRows = minSplitRows;
+            this.minGain = minGain;
+            this.maxNodes = maxNodes > 0 ? maxNodes : Integer.MAX_VALUE;
+            this.deadline = deadline;
+            nodes = new AtomicInteger(this.maxNodes - 1);
+        }
+
+
+        /**
+         * Returns the limits of another tree of the same training run, with
+         * the same deadline but nodes of its own.
+         */
+        Limits copy() {
+            return new Limits(maxDepth, minSplitRows, minGain, maxNodes,
+                    deadline);
+        }
+
+        /**
+         * Returns true if a node with the given depth and number of examples
+         * may be split.
+         */
+        boolean grow(int depth, int rows) {
+            return depth < maxDepth && rows >= minSplitRows
+                    && (deadline == 0 || System.nanoTime() - deadline < 0);
+        }
+
+        /**
+         * Returns true if a split with the given gain and number of branches
+         * may be made, taking the nodes it adds from those left if so.
+         */
+        boolean split(double gain, int branches) {
+            if (gain < minGain) return false;
+            for (int left = nodes.get(); left >= branches;
+                 left = nodes.get())
+                if (nodes.compareAndSet(left, left - branches)) return true;
+            return false;
+        }
+    }
+
+
+    /**
+     * Scratch buffers for growing a subtree with id3(), reused from node to
+     * node. The buffers of a node are still needed while its children are
+     * grown, so they are kept per depth: a node at depth d works in level d,
+     * and its children take turns in level d + 1. Exactly one attribute is
+     * tested per depth, so the remaining attributes of level d are always
+     * as many as the candidates of the subtree's root, less d - rootDepth.
+     * A child leaves its contingency tables in level d + 1 when it returns,
+     * which is how id3() takes them away from the node's to derive the
+     * tables of the largest branch.
+     * <p>
+     * Levels are allocated on first use and the contingency tables grown as
+     * needed, so once the deepest level has been reached growing allocates
+     * no scratch space. The same goes for the chunk buffers of large nodes:
+     * one for the thread growing the subtree, and one per candidate for the
+     * tasks of a parallel split search. A workspace is only used by one
+     * thread at a time.
+     */
+    static final class Workspace {
+        final Level[] levels;
+        final int[] cursors;        // partitioning cursors, one per value
+        private Chunk[] chunks;     // chunk buffers, allocated on first use
+        TrainingStats stats;        // figures of this workspace, or null
+        Random random;              // draws candidates, or null for all
+        int features;               // candidates drawn per node
+        Limits limits;              // limits of the tree, or null
+        private final int classes;
+        private final int rootDepth;
+        private final int rootCandidates;
+
+
+        /**
+         * Creates the workspace for growing a subtree.
+         *
+         * @param dataset    data points the subtree is grown from
+         * @param candidates remaining attributes at the subtree's root
+         * @param depth      depth of the subtree's root in the tree
+         */
+        Workspace(Dataset dataset, int[] candidates, int depth) {
+            int cardinality = 0;
+            for (int attribute : candidates)
+                cardinality = Math.max(cardinality,
+                        dataset.cardinalities[attribute]);
+
+            levels = new Level[depth + candidates.length + 1];
+            cursors = new int[cardinality];
+            classes = dataset.classesSize();
+            rootDepth = depth;
+            rootCandidates = candidates.length;
+            chunks = new Chunk[1];
+            level(depth).candidates = candidates;
+        }
+
+
+        /**
+         * Moves a random subset of the given candidates to their front, when
+         * drawing candidates, and returns the number of candidates at the
+         * front to evaluate.
+         */
+        int draw(int[] candidates) {
+            if (random == null || features >= candidates.length)
+                return candidates.length;
+
+            for (int i = 0; i < features; i++) {
+                int j = i + random.nextInt(candidates.length - i);
+                int candidate = candidates[j];
+                candidates[j] = candidates[i];
+                candidates[i] = candidate;
+            }
+            return features;
+        }
+
+        /**
+         * Returns the time at which work on a node starts, if figures are
+         * being collected.
+         */
+        long clock() {
+            return stats == null ? 0 : System.nanoTime();
+        }
+
+        /**
+         * Records a node decided at the given depth, from the given start.
+         */
+        void built(int depth, long start) {
+            if (stats != null)
+                stats.built(depth, 1, System.nanoTime() - start);
+        }
+
+        /**
+         * Records rows counted into contingency tables at the given depth.
+         */
+        void scanned(int depth, int rows) {
+            if (stats != null) stats.scanned(depth, rows);
+        }
+
+        /**
+         * Records the evaluation of the candidates of a node.
+         */
+        void evaluated(int candidates, int exact) {
+            if (stats != null) stats.evaluated(candidates, exact);
+        }
+
+        /**
+         * Returns the chunk buffers of the thread growing the subtree.
+         */
+        Chunk chunk() {
+            if (chunks[0] == null) chunks[0] = new Chunk();
+            return chunks[0];
+        }
+
+        /**
+         * Returns chunk buffers for the given number of concurrent tasks,
+         * the first being those of chunk().
+         */
+        Chunk[] chunks(int count) {
+            if (chunks.length < count) chunks = Arrays.copyOf(chunks, count);
+            for (int i = 0; i < count; i++)
+                if (chunks[i] == null) chunks[i] = new Chunk();
+            return chunks;
+        }
+
+        /**
+         * Returns the buffers of the given depth.
+         */
+        Level level(int depth) {
+            if (levels[depth] == null)
+                levels[depth] = new Level(
+                        rootCandidates - (depth - rootDepth), classes,
+                        cursors.length);
+            return levels[depth];
+        }
+
+
+        /**
+         * Buffers of the node being grown at one depth.
+         */
+        static final class Level {
+            int[] candidates;       // remaining attributes
+            final int[] classCounts;
+            final int[] offsets;    // start of each candidate's table
+            int[] tables;           // contingency tables of the candidates
+            int[] derived;          // tables of the derived branch
+            boolean counted;        // tables hold the node's counts
+            boolean provided;       // tables derived, not to be counted
+            final double[] remainders;  // entropy left by each candidate
+            final int[] bounds;     // start of each branch, then the end
+            double gain;            // information gain of the question
+
+
+            Level(int candidates, int classes, int cardinality) {
+                this.candidates = new int[candidates];
+                classCounts = new int[classes];
+                offsets = new int[candidates + 1];
+                tables = new int[0];
+                derived = tables;
+                remainders = new double[candidates];
+                bounds = new int[cardinality + 1];
+            }
+
+
+            /**
+             * Returns the contingency tables buffer, grown to hold at least
+             * the given number of counts.
+             */
+            int[] tables(int size) {
+                if (tables.length < size) tables = new int[size];
+                return tables;
+            }
+
+            /**
+             * Returns the buffer for the tables of a derived branch, grown
+             * to hold at least the given number of counts.
+             */
+            int[] derived(int size) {
+                if (derived.length < size) derived = new int[size];
+                return derived;
+            }
+        }
+    }
+
+
+    /**
+     * Buffers of a chunk of HISTOGRAM_ROWS rows counted through the
+     * histogram kernel: the row numbers, their classes, and the keys of the
+     * attribute being counted.
+     */
+    static final class Chunk {
+        final int[] rows = new int[HISTOGRAM_ROWS];
+        final int[] classes = new int[HISTOGRAM_ROWS];
+        final byte[] keys = new byte[HISTOGRAM_ROWS];
+    }
+
+
+    /**
+     * Adds up small keys into a histogram. Dataset counts contingency tables
+     * and class frequencies of large nodes through a kernel, in chunks of
+     * HISTOGRAM_ROWS rows, each row's key being its table cell: the code of
+     * its value times the number of classes, plus its class.
+     */
+    interface HistogramKernel {
+
+        /**
+         * Adds one to histogram[offset + keys[i]] for every i below n.
+         *
+         * @param keys      keys to count, each in [0, cells)
+         * @param n         number of keys to count
+         * @param cells     number of cells of the histogram
+         * @param histogram counts to add to
+         * @param offset    position of the histogram's first cell
+         */
+        void count(byte[] keys, int n, int cells, int[] histogram,
+                   int offset);
+
+        /**
+         * Returns the kernel on the Vector API when the JVM has the
+         * jdk.incubator.vector module and VectorHistogram was built, or the
+         * scalar kernel otherwise.
+         */
+        static HistogramKernel preferred() {
+            try {
+                HistogramKernel kernel = (HistogramKernel) Class
+                        .forName("VectorHistogram")
+                        .getDeclaredConstructor().newInstance();
+                // links the module's classes, which may be missing
+                kernel.count(new byte[1], 1, 1, new int[1], 0);
+                return kernel;
+            } catch (ReflectiveOperationException | LinkageError e) {
+                return new ScalarHistogram();
+            }
+        }
+    }
+
+    /**
+     * Histogram kernel incrementing one counter per key.
+     */
+    static final class ScalarHistogram implements HistogramKernel {
+
+        @Override
+        public void count(byte[] keys, int n, int cells, int[] histogram,
+                          int offset) {
+            for (int i = 0; i < n; i++)
+                histogram[offset + keys[i]]++;
+        }
+    }
+
+
+    /**
+     * A Column holds the dictionary codes of one attribute (or of the class)
+     * for every example of the training data. The width of the primitive
+     * array backing a column is chosen from the number of distinct values
+     * it has to represent, so that two-valued attributes cost one byte per
+     * example rather than a reference to a String.
+     */
+    abstract static class Column {
+
+        /**
+         * Returns a column able to store codes in [0, cardinality) for the
+         * given number of rows, backed by the narrowest suitable array.
+         *
+         * @param cardinality number of distinct codes
+         * @param rows        number of rows
+         * @return empty column
+         */
+        static Column forCardinality(int cardinality, int rows) {
+            if (cardinality <= 1 << Byte.SIZE) return new ByteColumn(rows);
+            else if (cardinality <= 1 << Short.SIZE)
+                return new ShortColumn(rows);
+            else return new IntColumn(rows);
+        }
+
+        /**
+         * Returns the number of bytes per row of the column that
+         * forCardinality() returns for the given number of distinct codes.
+         *
+         * @param cardinality number of distinct codes
+         * @return 1, 2 or 4
+         */
+        static int width(int cardinality) {
+            if (cardinality <= 1 << Byte.SIZE) return Byte.BYTES;
+            else if (cardinality <= 1 << Short.SIZE) return Short.BYTES;
+            else return Integer.BYTES;
+        }
+
+        /**
+         * Returns the code stored for the given row.
+         *
+         * @param row row number
+         * @return code of the row's value
+         */
+        abstract int get(int row);
+
+        /**
+         * Stores the code for the given row.
+         *
+         * @param row  row number
+         * @param code code of the row's value
+         */
+        abstract void set(int row, int code);
+
+        /**
+         * Returns the number of rows in the column.
+         *
+         * @return number of rows
+         */
+        abstract int size();
+    }
+
+    /**
+     * Column for up to 256 distinct values.
+     */
+    static final class ByteColumn extends Column {
+        private final byte[] codes;
+
+        ByteColumn(int rows) {
+            codes = new byte[rows];
+        }
+
+        ByteColumn(byte[] codes) {
+            this.codes = codes;
+        }
+
+        @Override
+        int get(int row) {
+            return codes[row] & 0xFF;
+        }
+
+        @Override
+        void set(int row, int code) {
+            codes[row] = (byte) code;
+        }
+
+        @Override
+        int size() {
+            return codes.length;
+        }
+    }
+
+    /**
+     * Column for up to 65536 distinct values.
+     */
+    static final class ShortColumn extends Column {
+        private final short[] codes;
+
+        ShortColumn(int rows) {
+            codes = new short[rows];
+        }
+
+        ShortColumn(short[] codes) {
+            this.codes = codes;
+        }
+
+        @Override
+        int get(int row) {
+            return codes[row] & 0xFFFF;
+        }
+
+        @Override
+        void set(int row, int code) {
+            codes[row] = (short) code;
+        }
+
+        @Override
+        int size() {
+            return codes.length;
+        }
+    }
+
+    /**
+     * Column for any number of distinct values.
+     */
+    static final class IntColumn extends Column {
+        private final int[] codes;
+
+        IntColumn(int rows) {
+            codes = new int[rows];
+        }
+
+        IntColumn(int[] codes) {
+            this.codes = codes;
+        }
+
+        @Override
+        int get(int row) {
+            return codes[row];
+        }
+
+        @Override
+        void set(int row, int code) {
+            codes[row] = code;
+        }
+
+        @Override
+        int size() {
+            return codes.length;
+        }
+    }
+
+
+    /**
+     * Column reading its codes from ByteBuffers, such as a mapped cache
+     * file, rather than from an array on the heap. Codes are 1, 2 or 4
+     * bytes wide, in the buffers' byte order, as Column.width() gives for
+     * the column's cardinality. The codes are split into buffers of
+     * 1 << BUFFER_SHIFT bytes, the last one shorter, and addressed by long
+     * offsets, so that a column of 4-byte codes is not held to the 2 GB of
+     * one buffer; like every column, it holds at most Integer.MAX_VALUE
+     * rows. The column is writable if its buffers are.
+     */
+    static final class BufferColumn extends Column {
+        private static final int MASK = (1 << BUFFER_SHIFT) - 1;
+        private ByteBuffer[] buffers;       // null once released
+        private final int width;
+        private final int shift;
+        private final int size;
+
+        BufferColumn(ByteBuffer[] buffers, int width, int size) {
+            this.buffers = buffers;
+            this.width = width;
+            this.shift = Integer.numberOfTrailingZeros(width);
+            this.size = size;
+        }
+
+
+        /**
+         * Returns the number of buffers holding the codes of the given
+         * number of rows, each of the given width.
+         *
+         * @param width bytes per row
+         * @param size  number of rows
+         * @return number of buffers
+         */
+        static int buffers(int width, int size) {
+            return (int) (((long) width * size + MASK) >>> BUFFER_SHIFT);
+        }
+
+        /**
+         * Returns the number of bytes held by the given buffer of a column
+         * of the given width and size.
+         *
+         * @param width  bytes per row
+         * @param size   number of rows
+         * @param buffer index of the buffer
+         * @return bytes of the buffer
+         */
+        static int bufferSize(int width, int size, int buffer) {
+            return (int) Math.min(1 << BUFFER_SHIFT,
+                    (long) width * size - ((long) buffer << BUFFER_SHIFT));
+        }
+
+        @Override
+        int get(int row) {
+            long offset = (long) row << shift;
+            ByteBuffer codes = buffers[(int) (offset >>> BUFFER_SHIFT)];
+            int index = (int) offset & MASK;
+            if (width == Byte.BYTES) return codes.get(index) & 0xFF;
+            else if (width == Short.BYTES)
+                return codes.getShort(index) & 0xFFFF;
+            else return codes.getInt(index);
+        }
+
+        @Override
+        void set(int row, int code) {
+            long offset = (long) row << shift;
+            ByteBuffer codes = buffers[(int) (offset >>> BUFFER_SHIFT)];
+            int index = (int) offset & MASK;
+            if (width == Byte.BYTES) codes.put(index, (byte) code);
+            else if (width == Short.BYTES)
+                codes.putShort(index, (short) code);
+            else codes.putInt(index, code);
+        }
+
+        @Override
+        int size() {
+            return size;
+        }
+
+        /**
+         * HELPER: returns whether the column reads a mapped file.
+         */
+        private boolean mapped() {
+            return buffers.length > 0
+                    && buffers[0] instanceof MappedByteBuffer;
+        }
+    }
+
+
+    /**
+     * Off-heap copies of the columns and row numbers of a Dataset, for one
+     * training run. The copies are BufferColumns of direct buffers in
+     * native byte order, released explicitly when the store is closed, so
+     * that their memory does not wait for the collector to find them
+     * unreachable; nothing may read the copies afterwards. Columns already
+     * backed by a mapped file are used in place, and unmapped on close.
+     * Where the JVM does not allow buffers to be released early, the
+     * collector releases them.
+     */
+    static final class OffHeapStore implements Closeable {
+        private static final MethodHandle INVOKE_CLEANER = invokeCleaner();
+        private final List<BufferColumn> columns = new ArrayList<>();
+        private final List<Dataset> datasets = new ArrayList<>();
+
+
+        /**
+         * Returns a dataset selecting the same rows as the given one, with
+         * its columns and row numbers off the heap.
+         *
+         * @param dataset     dataset to copy
+         * @param stringCount number of labels for each attribute and class
+         * @return off-heap dataset
+         */
+        Dataset copy(Dataset dataset, int[] stringCount) {
+            Column[] columns = new Column[dataset.attributes.length + 1];
+            for (int i = 0; i < columns.length - 1; i++)
+                columns[i] = copy(dataset.attributes[i], stringCount[i]);
+            columns[columns.length - 1] =
+                    copy(dataset.classes, dataset.classCount);
+
+            Column rows = rows(dataset.size());
+            for (int i = 0; i < dataset.size(); i++)
+                rows.set(i, dataset.rows.get(dataset.from + i));
+            Dataset copy = new Dataset(columns, stringCount, rows);
+            datasets.add(copy);
+            return copy;
+        }
+
+        /**
+         * Returns an off-heap column for the given number of row numbers.
+         *
+         * @param size number of rows
+         * @return empty column
+         */
+        Column rows(int size) {
+            return allocate(Integer.BYTES, size);
+        }
+
+        /**
+         * Releases the buffers of the store. The datasets it copied lose
+         * their columns, shared with the datasets selecting their rows, and
+         * its columns lose their buffers, so that reading any of them
+         * throws a NullPointerException rather than reading freed memory.
+         */
+        @Override
+        public void close() {
+            for (Dataset dataset : datasets) {
+                Arrays.fill(dataset.attributes, null);
+                dataset.attributes = null;
+                dataset.classes = null;
+                dataset.rows = null;
+            }
+            datasets.clear();
+
+            for (BufferColumn column : columns) {
+                for (ByteBuffer buffer : column.buffers) {
+                    try {
+                        if (INVOKE_CLEANER != null)
+                            INVOKE_CLEANER.invokeExact(buffer);
+                    } catch (Throwable e) {
+                        // left to the collector
+                    }
+                }
+                column.buffers = null;
+            }
+            columns.clear();
+        }
+
+        /**
+         * HELPER: returns an off-heap copy of a column, or the column itself
+         * if a mapped file already backs it.
+         */
+        private Column copy(Column column, int cardinality) {
+            if (column instanceof BufferColumn) {
+                BufferColumn buffers = (BufferColumn) column;
+                if (buffers.mapped()) columns.add(buffers);
+                return column;
+            }
+
+            Column copy = allocate(Column.width(cardinality), column.size());
+            for (int row = 0; row < column.size(); row++)
+                copy.set(row, column.get(row));
+            return copy;
+        }
+
+        /**
+         * HELPER: allocates a column of the given width and size.
+         */
+        private Column allocate(int width, int size) {
+            ByteBuffer[] buffers =
+                    new ByteBuffer[BufferColumn.buffers(width, size)];
+            for (int i = 0; i < buffers.length; i++)
+                buffers[i] = ByteBuffer.allocateDirect(
+                        BufferColumn.bufferSize(width, size, i))
+                        .order(ByteOrder.nativeOrder());
+            BufferColumn column = new BufferColumn(buffers, width, size);
+            columns.add(column);
+            return column;
+        }
+
+        /**
+         * HELPER: returns a handle on Unsafe.invokeCleaner(), the only way
+         * to release a direct buffer before it is collected until the
+         * Foreign Memory API, or null if the JVM does not allow it.
+         */
+        private static MethodHandle invokeCleaner() {
+            try {
+                Class<?> unsafe = Class.forName("sun.misc.Unsafe");
+                Field instance = unsafe.getDeclaredField("theUnsafe");
+                instance.setAccessible(true);
+                return MethodHandles.lookup().findVirtual(unsafe,
+                        "invokeCleaner",
+                        MethodType.methodType(void.class, ByteBuffer.class))
+                        .bindTo(instance.get(null));
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                return null;
+            }
+        }
+    }
+
+
+    /**
+     * Accumulates the codes of a column whose length and cardinality are not
+     * known in advance, as when reading a file. Codes are stored in a byte
+     * array until one no longer fits, at which point the array is widened
+     * to shorts, and then to ints, so the finished column has the same
+     * width Column.forCardinality() would have chosen. A builder is itself
+     * a Column, for data that keeps growing after training has started.
+     */
+    static final class ColumnBuilder extends Column {
+        private byte[] bytes;
+        private short[] shorts;
+        private int[] ints;
+        private int size;
+
+
+        ColumnBuilder() {
+            this(1024);
+        }
+
+        /**
+         * Constructs a builder with room for the given number of rows.
+         *
+         * @param capacity expected number of rows
+         */
+        ColumnBuilder(int capacity) {
+            bytes = new byte[Math.max(capacity, 1)];
+        }
+
+        /**
+         * Constructs a builder holding the codes of an existing column.
+         *
+         * @param column codes to start from
+         */
+        ColumnBuilder(Column column) {
+            this(column.size());
+            for (int row = 0; row < column.size(); row++)
+                add(column.get(row));
+        }
+
+        @Override
+        int get(int row) {
+            if (ints != null) return ints[row];
+            else if (shorts != null) return shorts[row] & 0xFFFF;
+            else return bytes[row] & 0xFF;
+        }
+
+        @Override
+        void set(int row, int code) {
+            while (code > (ints != null ? Integer.MAX_VALUE
+                    : shorts != null ? 0xFFFF : 0xFF))
+                widen();
+
+            if (ints != null) ints[row] = code;
+            else if (shorts != null) shorts[row] = (short) code;
+            else bytes[row] = (byte) code;
+        }
+
+        @Override
+        int size() {
+            return size;
+        }
+
+        /**
+         * Appends the code of the next row.
+         *
+         * @param code code of the row's value
+         */
+        void add(int code) {
+            if (ints != null) {
+                if (size == ints.length) ints = Arrays.copyOf(ints, size * 2);
+                ints[size++] = code;
+            } else if (shorts != null) {
+                if (code > 0xFFFF) {
+                    widen();
+                    add(code);
+                    return;
+                }
+                if (size == shorts.length)
+                    shorts = Arrays.copyOf(shorts, size * 2);
+                shorts[size++] = (short) code;
+            } else {
+                if (code > 0xFF) {
+                    widen();
+                    add(code);
+                    return;
+                }
+                if (size == bytes.length)
+                    bytes = Arrays.copyOf(bytes, size * 2);
+                bytes[size++] = (byte) code;
+            }
+        }
+
+        /**
+         * Returns a column holding the codes added so far.
+         *
+         * @return finished column
+         */
+        Column build() {
+            if (ints != null) return new IntColumn(Arrays.copyOf(ints, size));
+            else if (shorts != null)
+                return new ShortColumn(Arrays.copyOf(shorts, size));
+            else return new ByteColumn(Arrays.copyOf(bytes, size));
+        }
+
+        /**
+         * HELPER: copies the codes into an array of the next width.
+         */
+        private void widen() {
+            if (shorts == null) {
+                shorts = new short[Math.max(bytes.length, 1)];
+                for (int i = 0; i < size; i++)
+                    shorts[i] = (short) (bytes[i] & 0xFF);
+                bytes = null;
+            } else {
+                ints = new int[Math.max(shorts.length, 1)];
+                for (int i = 0; i < size; i++)
+                    ints[i] = shorts[i] & 0xFFFF;
+                shorts = null;
+            }
+        }
+    }
+
+
+    /**
+     * Dictionary mapping the distinct values of a column to consecutive
+     * codes, in order of first appearance. Values are looked up by their
+     * encoded bytes, so a String is only created the first time a value is
+     * seen rather than for every field read.
+     */
+    static final class Dictionary {
+        private byte[][] keys = new byte[16][];
+        private int[] codes = new int[16];
+        private int[] hashes = new int[16];
+        private List<String> labels = new ArrayList<>();
+
+
+        /**
+         * Returns the code for the value stored in buffer[from, to), adding
+         * the value to the dictionary if it has not been seen before.
+         *
+         * @param buffer bytes holding the value
+         * @param from   index of the first byte of the value
+         * @param to     index after the last byte of the value
+         * @return code of the value
+         */
+        int encode(byte[] buffer, int from, int to) {
+            int hash = 1;
+            for (int i = from; i < to; i++)
+                hash = 31 * hash + buffer[i];
+            hash ^= hash >>> 16;
+
+            int mask = keys.length - 1;
+            int slot = hash & mask;
+            while (keys[slot] != null) {
+                if (hashes[slot] == hash && equal(keys[slot], buffer, from, to))
+                    return codes[slot];
+                slot = (slot + 1) & mask;
+            }
+
+            // new value found
+            int code = labels.size();
+            keys[slot] = Arrays.copyOfRange(buffer, from, to);
+            codes[slot] = code;
+            hashes[slot] = hash;
+            labels.add(new String(keys[slot], StandardCharsets.UTF_8));
+
+            if (labels.size() * 2 > keys.length) rehash();
+            return code;
+        }
+
+        /**
+         * Returns the values in the dictionary, indexed by their code.
+         *
+         * @return labels of the column
          */
-        int classesSize() {
-            return classes.size();
+        String[] labels() {
+            return labels.toArray(new String[labels.size()]);
         }
 
         /**
-         * Returns new datasets obtained by splitting the current dataset
-         * by its values for the given attribute.
+         * HELPER: doubles the capacity of the hash table.
+         */
+        private void rehash() {
+            byte[][] oldKeys = keys;
+            int[] oldCodes = codes;
+            int[] oldHashes = hashes;
+
+            keys = new byte[oldKeys.length * 2][];
+            codes = new int[keys.length];
+            hashes = new int[keys.length];
+
+            int mask = keys.length - 1;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] == null) continue;
+                int slot = oldHashes[i] & mask;
+                while (keys[slot] != null) slot = (slot + 1) & mask;
+                keys[slot] = oldKeys[i];
+                codes[slot] = oldCodes[i];
+                hashes[slot] = oldHashes[i];
+            }
+        }
+
+        /**
+         * HELPER: compares a stored key with buffer[from, to).
+         */
+        private static boolean equal(byte[] key, byte[] buffer,
+                                     int from, int to) {
+            if (key.length != to - from) return false;
+            for (int i = 0; i < key.length; i++)
+                if (key[i] != buffer[from + i]) return false;
+            return true;
+        }
+    }
+
+
+    /**
+     * Streaming reader for comma-separated files, reading the file through
+     * a FileChannel in one pass and exposing one record (line) at a time.
+     * Other streams, such as the bodies of scoring requests, are read by the
+     * same rules.
+     * The fields of the current record are kept as ranges of a reusable
+     * byte buffer, so that they can be dictionary-encoded without creating
+     * Strings. Both "\n" and "\r\n" line endings are accepted, blank lines
+     * are skipped, and fields may be enclosed in double quotes, in which
+     * case they can contain commas, line breaks and doubled ("") quotes.
+     */
+    static final class CsvReader implements Closeable {
+        private final String fileName;
+        private final ReadableByteChannel channel;
+        private final ByteBuffer input;
+        private byte[] record = new byte[256];
+        private int[] ends = new int[16];
+        private int fields;
+        private int length;
+        private int line;
+        private boolean endOfFile;
+
+
+        /**
+         * Opens the given file for reading.
          *
-         * @param attributeIndex the attribute to use for splitting
-         * @return list of new datasets
+         * @param fileName file to read
+         * @throws IOException if the file cannot be opened
          */
-        List<Dataset> splitByAttribute(int attributeIndex) {
-            List<String> values = attributes.get(attributeIndex);
-            List<List<Example>> subsets = new ArrayList<>();
+        CsvReader(String fileName) throws IOException {
+            this(FileChannel.open(Paths.get(fileName), StandardOpenOption.READ),
+                    fileName, ByteBuffer.allocateDirect(1 << 16));
+        }
+
+        /**
+         * Reads the given stream, which is closed with the reader.
+         *
+         * @param in   stream to read
+         * @param name name of the stream in error messages
+         */
+        CsvReader(InputStream in, String name) {
+            this(Channels.newChannel(in), name, ByteBuffer.allocate(1 << 13));
+        }
+
+        /**
+         * Private constructor for internal use.
+         *
+         * @param channel  channel to read
+         * @param fileName name of the channel's file in error messages
+         * @param input    buffer of the bytes read ahead
+         */
+        private CsvReader(ReadableByteChannel channel, String fileName,
+                          ByteBuffer input) {
+            this.channel = channel;
+            this.fileName = fileName;
+            this.input = input;
+            input.limit(0);
+        }
+
+
+        /**
+         * Advances to the next record of the file.
+         *
+         * @return false if the end of the file was reached, true otherwise
+         * @throws IOException if the file cannot be read
+         */
+        boolean next() throws IOException {
+            boolean quoted = false;     // inside a quoted field
+            boolean quote = false;      // quote seen inside a quoted field
+            boolean started = false;    // some field of the record was read
+
+            fields = 0;
+            length = 0;
+
+            while (true) {
+                if (!input.hasRemaining() && !fill()) {
+                    // last line of file without a line break
+                    if (!started && length == 0) return false;
+                    endField();
+                    line++;
+                    return true;
+                }
+
+                byte b = input.get();
+
+                if (quoted) {
+                    if (quote) {
+                        quote = false;
+                        // doubled quote stands for a quote character
+                        if (b == '"') {
+                            append(b);
+                            continue;
+                        }
+                        quoted = false;
+                    } else {
+                        if (b == '"') quote = true;
+                        else {
+                            if (b == '\n') line++;
+                            append(b);
+                        }
+                        continue;
+                    }
+                }
+
+                if (b == ',') {
+                    endField();
+                    started = true;
+                } else if (b == '\n' || b == '\r') {
+                    line++;
+                    if (b == '\r') skipLineFeed();
+                    // blank line
+                    if (!started && length == 0) continue;
+                    endField();
+                    return true;
+                } else if (b == '"' && length == start(fields)) {
+                    quoted = true;
+                    started = true;
+                } else {
+                    append(b);
+                }
+            }
+        }
+
+        /**
+         * Returns the number of fields in the current record.
+         *
+         * @return number of fields
+         */
+        int fields() {
+            return fields;
+        }
+
+        /**
+         * Checks that the current record has the given number of fields.
+         *
+         * @param count number of fields expected
+         * @throws IOException if the record has more or fewer fields
+         */
+        void expect(int count) throws IOException {
+            if (fields != count)
+                throw new IOException("Scan error in " + fileName
+                        + " at line " + line + ": " + fields
+                        + " fields instead of " + count);
+        }
+
+        /**
+         * Returns the number of the line at which the current record ends,
+         * counting from 1.
+         *
+         * @return line number
+         */
+        int line() {
+            return line;
+        }
+
+        /**
+         * Returns the buffer holding the fields of the current record. The
+         * buffer is reused, so it is only valid until next() is called.
+         *
+         * @return record buffer
+         */
+        byte[] buffer() {
+            return record;
+        }
+
+        /**
+         * Returns the index in buffer() of the first byte of a field.
+         *
+         * @param field index of the field in the record
+         * @return start of the field
+         */
+        int start(int field) {
+            return field == 0 ? 0 : ends[field - 1];
+        }
+
+        /**
+         * Returns the index in buffer() after the last byte of a field.
+         *
+         * @param field index of the field in the record
+         * @return end of the field
+         */
+        int end(int field) {
+            return ends[field];
+        }
+
+        /**
+         * Returns a field of the current record as a String.
+         *
+         * @param field index of the field in the record
+         * @return value of the field
+         */
+        String field(int field) {
+            return new String(record, start(field),
+                    end(field) - start(field), StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+
+        /**
+         * HELPER: reads the next block of the file into the input buffer.
+         */
+        private boolean fill() throws IOException {
+            if (endOfFile) return false;
 
-            for (int i = 0; i < values.size(); i++)
-                subsets.add(new ArrayList<>());
+            input.clear();
+            int read;
+            do {
+                read = channel.read(input);
+            } while (read == 0);
+            input.flip();
 
-            // split into subsets
-            for (Example ex : examples)
-                subsets.get(values.indexOf(ex.attribute(attributeIndex))).add(ex);
+            if (read < 0) endOfFile = true;
+            return read > 0;
+        }
+
+        /**
+         * HELPER: consumes the line feed of a "\r\n" line ending.
+         */
+        private void skipLineFeed() throws IOException {
+            if ((input.hasRemaining() || fill())
+                    && input.get(input.position()) == '\n')
+                input.get();
+        }
 
-            // create new datasets from subset lists
-            Dataset[] result = new Dataset[subsets.size()];
-            for (int i = 0; i < subsets.size(); i++)
-                result[i] = new Dataset(classes, attributes, subsets.get(i));
+        /**
+         * HELPER: appends a byte to the current field.
+         */
+        private void append(byte b) {
+            if (length == record.length)
+                record = Arrays.copyOf(record, length * 2);
+            record[length++] = b;
+        }
 
-            return new ArrayList<>(Arrays.asList(result));
+        /**
+         * HELPER: terminates the current field.
+         */
+        private void endField() {
+            if (fields == ends.length) ends = Arrays.copyOf(ends, fields * 2);
+            ends[fields++] = length;
         }
+    }
+
+
+    /**
+     * Counts the class frequencies of the nodes of one level of a tree grown
+     * breadth-first. The nodes of a level are numbered from 0 (their slots).
+     */
+    interface FrontierCounter {
 
         /**
-         * Returns the entropy of the dataset.
+         * Moves every example to its node in the current level, and counts
+         * the examples of the nodes in slots [from, to).
+         * <p>
+         * The routing describes how the nodes of the previous level were
+         * split: routing[slot] is null if that node became a leaf, and
+         * otherwise holds the attribute it was split on followed, for each
+         * value of the attribute, by the slot of the child in the current
+         * level, or -1 if the child is a leaf. The routing is null when the
+         * examples are already in their nodes of the current level, which is
+         * the case for the first level and when a level is counted in more
+         * than one pass.
+         *
+         * @param routing    splits of the previous level, or null
+         * @param candidates attributes left to test at each current node
+         * @param from       first slot to count
+         * @param to         slot after the last slot to count
+         * @return counts of the nodes in [from, to)
+         * @throws IOException if the examples cannot be read
          */
-        double entropy() {
-            // entropy of empty dataset is trivially zero
-            if (isEmpty()) return 0;
+        Counts count(int[][] routing, int[][] candidates, int from, int to)
+                throws IOException;
+    }
+
 
-            double entropy = 0;
-            int[] frequencies = new int[classes.size()];
+    /**
+     * Class frequencies and contingency tables of a range of nodes of a
+     * level. For the i-th node of the range, classCounts[i][class] counts its
+     * examples of each class, and tables[i][j] is the contingency table of
+     * its j-th candidate attribute, indexed as [value * classes + class].
+     */
+    static final class Counts {
+        final int[][] classCounts;
+        final int[][][] tables;
+        private final int[][] candidates;
+        private final int from;
+        private final int classIndex;
 
-            // compute frequencies
-            for (Example ex : examples)
-                frequencies[classes.indexOf(ex.cls())]++;
 
-            // compute entropy
-            for (int freq : frequencies)
-                entropy -= xlogx((double) freq / (double) size());
+        /**
+         * Constructs zeroed counts for the nodes in slots [from, to).
+         *
+         * @param candidates    attributes left to test at each node
+         * @param from          first slot counted
+         * @param to            slot after the last slot counted
+         * @param cardinalities number of values of each attribute and class
+         */
+        Counts(int[][] candidates, int from, int to, int[] cardinalities) {
+            this.candidates = candidates;
+            this.from = from;
+            classIndex = cardinalities.length - 1;
 
-            return entropy;
+            int classes = cardinalities[classIndex];
+            classCounts = new int[to - from][classes];
+            tables = new int[to - from][][];
+            for (int i = 0; i < tables.length; i++) {
+                int[] attrs = candidates[from + i];
+                tables[i] = new int[attrs.length][];
+                for (int j = 0; j < attrs.length; j++)
+                    tables[i][j] = new int[cardinalities[attrs[j]] * classes];
+            }
         }
 
+
         /**
-         * Returns true if the dataset only contains examples of a single class.
+         * Counts one example of the node in the given slot.
          *
-         * @return true if all examples have same class, false otherwise
+         * @param slot slot of the example's node
+         * @param row  codes of the example's attributes and class
          */
-        boolean isPerfectlyClassified() {
-            Set<String> classes = new HashSet<>();
+        void add(int slot, int[] row) {
+            int i = slot - from;
+            int cls = row[classIndex];
+            int classes = classCounts[i].length;
+            int[] attrs = candidates[slot];
 
-            // empty dataset is trivially perfectly classified
-            if (examples.size() == 0) return true;
+            classCounts[i][cls]++;
+            for (int j = 0; j < attrs.length; j++)
+                tables[i][j][row[attrs[j]] * classes + cls]++;
+        }
 
-            classes.add(examples.get(0).cls());
-            // iterate over examples and find non-duplicates
-            for (Example ex : examples)
-                if (classes.add(ex.cls()))
-                    return false;
+        /**
+         * Adds counts of the same nodes, taken over other examples.
+         *
+         * @param other counts to add
+         */
+        void add(Counts other) {
+            for (int i = 0; i < classCounts.length; i++) {
+                for (int c = 0; c < classCounts[i].length; c++)
+                    classCounts[i][c] += other.classCounts[i][c];
+                for (int j = 0; j < tables[i].length; j++)
+                    for (int k = 0; k < tables[i][j].length; k++)
+                        tables[i][j][k] += other.tables[i][j][k];
+            }
+        }
 
-            // if only duplicates found
-            return true;
+        /**
+         * Writes the counts, as big-endian ints, node by node.
+         *
+         * @param out stream to write to
+         * @throws IOException if the stream cannot be written
+         */
+        void write(DataOutputStream out) throws IOException {
+            for (int i = 0; i < classCounts.length; i++) {
+                for (int count : classCounts[i])
+                    out.writeInt(count);
+                for (int[] table : tables[i])
+                    for (int count : table)
+                        out.writeInt(count);
+            }
         }
 
         /**
-         * Return the class index with the highest frequency in the dataset. If
-         * there are multiple classes with equal frequency, returns the first one
-         * in the list.
+         * Reads counts of the same nodes written by write(), replacing these.
          *
-         * @return class with highest frequency in the dataset
+         * @param in stream to read from
+         * @throws IOException if the stream cannot be read or ends early
          */
-        int majorityClass() {
-            int[] frequencies = new int[classes.size()];
-            int majorityClass = 0;
+        void read(DataInputStream in) throws IOException {
+            for (int i = 0; i < classCounts.length; i++) {
+                for (int c = 0; c < classCounts[i].length; c++)
+                    classCounts[i][c] = in.readInt();
+                for (int[] table : tables[i])
+                    for (int k = 0; k < table.length; k++)
+                        table[k] = in.readInt();
+            }
+        }
+    }
+
+
+    /**
+     * FrontierCounter over examples stored in a row file, as written by
+     * trainOutOfCore(): the codes of every example, attributes then class,
+     * one after the other. The slot of each example in the current level is
+     * kept in a node file next to it, rewritten whenever a new level is
+     * routed; examples that reached a leaf are stored with slot -1.
+     */
+    static final class LevelScan implements FrontierCounter, Closeable {
+        private final Path rows;
+        private final Path directory;
+        private final int[] cardinalities;
+        private Path nodes;
+
+
+        /**
+         * Constructs a counter over the examples in the given row file.
+         *
+         * @param rows          row file
+         * @param directory     directory for the node files
+         * @param cardinalities number of values of each attribute and class
+         */
+        LevelScan(Path rows, Path directory, int[] cardinalities) {
+            this.rows = rows;
+            this.directory = directory;
+            this.cardinalities = cardinalities;
+        }
+
+
+        @Override
+        public Counts count(int[][] routing, int[][] candidates, int from,
+                            int to) throws IOException {
+            Counts counts = new Counts(candidates, from, to, cardinalities);
+            Path next = routing == null ? null
+                    : Files.createTempFile(directory, "id3-nodes", ".bin");
 
-            // compute frequencies
-            for (Example ex : examples)
-                frequencies[classes.indexOf(ex.cls())]++;
+            // before the first routing, every example is in the root
+            try (CodeInput in = new CodeInput(rows);
+                 CodeInput slots = nodes == null ? null : new CodeInput(nodes);
+                 CodeOutput out = next == null ? null : new CodeOutput(next)) {
+                int[] row = new int[cardinalities.length];
 
-            // find most frequent class
-            int highestSoFar = 0;
-            for (int i = 0; i < frequencies.length; i++) {
-                if (frequencies[i] > highestSoFar) {
-                    majorityClass = i;
-                    highestSoFar = frequencies[i];
+                while (in.hasNext()) {
+                    for (int c = 0; c < row.length; c++)
+                        row[c] = in.read();
+
+                    int slot = slots == null ? 0 : slots.read() - 1;
+                    if (out != null) {
+                        int[] route = slot < 0 ? null : routing[slot];
+                        slot = route == null ? -1 : route[row[route[0]] + 1];
+                        out.write(slot + 1);
+                    }
+
+                    if (slot >= from && slot < to) counts.add(slot, row);
                 }
             }
 
-            return majorityClass;
+            if (next != null) {
+                if (nodes != null) Files.delete(nodes);
+                nodes = next;
+            }
+            return counts;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (nodes != null) Files.deleteIfExists(nodes);
+        }
+    }
+
+
+    /**
+     * FrontierCounter over a share of the examples held in memory, as a
+     * TrainingWorker holds it: the codes of every attribute and of the class
+     * in columns, and the slot of each example in the current level, or -1
+     * once the example reached a leaf.
+     */
+    static final class PartitionCounter implements FrontierCounter {
+        private final List<ColumnBuilder> builders = new ArrayList<>();
+        private Column[] columns;
+        private int[] cardinalities;
+        private int[] slots;
+
+
+        /**
+         * Appends the code of one field of an example. The fields of each
+         * example are added in column order, attributes then class.
+         *
+         * @param column column of the field
+         * @param code   code of the field's value
+         */
+        void add(int column, int code) {
+            if (column == builders.size()) builders.add(new ColumnBuilder());
+            builders.get(column).add(code);
+        }
+
+        /**
+         * Ends the examples of the share, placing all of them in the root,
+         * the first level to be counted.
+         *
+         * @param cardinalities number of values of each attribute and class
+         */
+        void start(int[] cardinalities) {
+            this.cardinalities = cardinalities;
+            int rows = builders.isEmpty() ? 0 : builders.get(0).size();
+
+            columns = new Column[cardinalities.length];
+            for (int c = 0; c < columns.length; c++)
+                columns[c] = c < builders.size() ? builders.get(c).build()
+                        : new ColumnBuilder(0).build();
+            builders.clear();
+            slots = new int[rows];
         }
 
         /**
-         * Returns the class index for the class of the first data point in the
-         * dataset. Useful when dataset is perfectly classified and it is
-         * unnecessary to iterate again over entire dataset to determine
-         * majority class.
+         * Returns the number of examples in the share.
          *
-         * @return class index for first data point's class
+         * @return number of examples
          */
-        int firstClass() {
-            return classes.indexOf(examples.get(0).cls());
+        int size() {
+            return slots == null ? 0 : slots.length;
         }
 
         @Override
-        public String toString() {
-            return "\nDATASET ("
-                    + size() + " examples, "
-                    + classesSize() + "classes, "
-                    + attributesSize() + " attributes):\n"
-                    + "Classes: " + classes.toString() + "\n"
-                    + "Attributes: " + attributes.toString() + "\n"
-                    + "Examples: " + examples.toString() + "\n"
-                    + "=======================================================";
+        public Counts count(int[][] routing, int[][] candidates, int from,
+                            int to) {
+            Counts counts = new Counts(candidates, from, to, cardinalities);
+            int[] row = new int[cardinalities.length];
+
+            for (int r = 0; r < slots.length; r++) {
+                int slot = slots[r];
+                if (routing != null && slot >= 0) {
+                    int[] route = routing[slot];
+                    slot = route == null ? -1
+                            : route[columns[route[0]].get(r) + 1];
+                    slots[r] = slot;
+                }
+
+                if (slot >= from && slot < to) {
+                    for (int c = 0; c < row.length; c++)
+                        row[c] = columns[c].get(r);
+                    counts.add(slot, row);
+                }
+            }
+            return counts;
         }
+    }
+
+
+    /**
+     * FrontierCounter over examples shared out among TrainingWorker
+     * processes. Examples are dealt to the workers one at a time, in turn,
+     * as they are added. A level is then counted by sending the request to
+     * every worker before reading any answer, so that the workers count
+     * their shares concurrently, and the counts of the workers are added
+     * up. Only the splits and the counts of a level cross the network.
+     */
+    static final class RemoteCounter implements FrontierCounter, Closeable {
+        private final Socket[] sockets;
+        private final DataInputStream[] ins;
+        private final DataOutputStream[] outs;
+        private int[] row = new int[16];
+        private int width;
+        private long rows;
+        private int[] cardinalities;
+
 
         /**
-         * HELPER: used to compute p(x) lg p(x) for entropy
+         * Connects to the given workers.
+         *
+         * @param workers addresses of the workers
+         * @throws IOException if a worker cannot be reached
          */
-        private double xlogx(double x) {
-            return x == 0 ? 0 : x * Math.log(x) / LOG2;
+        RemoteCounter(List<InetSocketAddress> workers) throws IOException {
+            sockets = new Socket[workers.size()];
+            ins = new DataInputStream[sockets.length];
+            outs = new DataOutputStream[sockets.length];
+
+            try {
+                for (int i = 0; i < sockets.length; i++) {
+                    sockets[i] = new Socket();
+                    sockets[i].setTcpNoDelay(true);
+                    sockets[i].connect(workers.get(i));
+                    ins[i] = new DataInputStream(new BufferedInputStream(
+                            sockets[i].getInputStream()));
+                    outs[i] = new DataOutputStream(new BufferedOutputStream(
+                            sockets[i].getOutputStream()));
+                }
+            } catch (IOException e) {
+                close();
+                throw e;
+            }
         }
 
 
         /**
-         * Internal class to Dataset. Represents a single data point in a
-         * dataset.
+         * Adds the code of one field of an example, as a CodeSink. The
+         * fields of each example are added in column order, attributes then
+         * class.
+         *
+         * @param column column of the field
+         * @param code   code of the field's value
+         * @throws IOException if a worker cannot be written to
+         */
+        void add(int column, int code) throws IOException {
+            if (column == 0 && width > 0) send();
+            if (width == row.length) row = Arrays.copyOf(row, width * 2);
+            row[width++] = code;
+        }
+
+        /**
+         * Sends the last example, and tells the workers that the examples
+         * are complete.
+         *
+         * @param cardinalities number of values of each attribute and class
+         * @throws IOException if a worker cannot be written to
          */
-        private class Example {
-            private String[] attributes;
-            private String exampleClass;
+        void start(int[] cardinalities) throws IOException {
+            if (width > 0) send();
+            this.cardinalities = cardinalities;
 
+            for (DataOutputStream out : outs) {
+                out.writeByte(TrainingWorker.START);
+                TrainingWorker.writeInts(out, cardinalities);
+                out.flush();
+            }
+        }
 
-            Example(String[] data) {
-                exampleClass = data[data.length - 1];
-                attributes = new String[data.length - 1];
-                System.arraycopy(data, 0, attributes, 0, data.length - 1);
+        @Override
+        public Counts count(int[][] routing, int[][] candidates, int from,
+                            int to) throws IOException {
+            for (DataOutputStream out : outs) {
+                out.writeByte(TrainingWorker.COUNT);
+                TrainingWorker.writeTable(out, routing);
+                TrainingWorker.writeTable(out, candidates);
+                out.writeInt(from);
+                out.writeInt(to);
+                out.flush();
             }
 
+            Counts counts = new Counts(candidates, from, to, cardinalities);
+            Counts share = new Counts(candidates, from, to, cardinalities);
+            for (DataInputStream in : ins) {
+                share.read(in);
+                counts.add(share);
+            }
+            return counts;
+        }
 
-            /**
-             * Returns the class of the example.
-             * @return class name
-             */
-            String cls() {
-                return exampleClass;
+        @Override
+        public void close() throws IOException {
+            IOException failure = null;
+            for (Socket socket : sockets) {
+                try {
+                    if (socket != null) socket.close();
+                } catch (IOException e) {
+                    failure = e;
+                }
             }
+            if (failure != null) throw failure;
+        }
 
-            /**
-             * Returns the value for the attribute identified by the index
-             *
-             * @param index index as defined by indexStrings()
-             * @return value of attribute
-             */
-            String attribute(int index) {
-                return attributes[index];
+        /**
+         * HELPER: sends the example added last to the next worker in turn.
+         */
+        private void send() throws IOException {
+            DataOutputStream out = outs[(int) (rows++ % outs.length)];
+            out.writeByte(TrainingWorker.ROW);
+            out.writeInt(width);
+            for (int c = 0; c < width; c++)
+                out.writeInt(row[c]);
+            width = 0;
+        }
+    }
+
+
+    /**
+     * Buffered writer of non-negative ints to a file, each stored as a
+     * variable-length quantity of 7 bits per byte, so that the small codes
+     * of categorical values take a single byte.
+     */
+    static final class CodeOutput implements Closeable {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16);
+
+
+        CodeOutput(Path file) throws IOException {
+            channel = FileChannel.open(file, StandardOpenOption.WRITE,
+                    StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+        }
+
+
+        /**
+         * Writes a non-negative int.
+         *
+         * @param value int to write
+         * @throws IOException if the file cannot be written
+         */
+        void write(int value) throws IOException {
+            if (buffer.remaining() < 5) flush();
+            while ((value & ~0x7F) != 0) {
+                buffer.put((byte) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            buffer.put((byte) value);
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                flush();
+            } finally {
+                channel.close();
             }
+        }
+
+        /**
+         * HELPER: writes the buffered bytes to the file.
+         */
+        private void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) channel.write(buffer);
+            buffer.clear();
+        }
+    }
+
+
+    /**
+     * Buffered reader of the ints written by a CodeOutput.
+     */
+    static final class CodeInput implements Closeable {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16);
+
+
+        CodeInput(Path file) throws IOException {
+            channel = FileChannel.open(file, StandardOpenOption.READ);
+            buffer.limit(0);
+        }
 
-            @Override
-            public String toString() {
-                return "Ex: {" + Arrays.asList(attributes) + "}";
+
+        /**
+         * Returns true if there are ints left to read.
+         *
+         * @return false at the end of the file
+         * @throws IOException if the file cannot be read
+         */
+        boolean hasNext() throws IOException {
+            return buffer.hasRemaining() || fill();
+        }
+
+        /**
+         * Reads the next int.
+         *
+         * @return int read
+         * @throws IOException if the file cannot be read or ends early
+         */
+        int read() throws IOException {
+            int value = 0;
+            for (int shift = 0; ; shift += 7) {
+                if (!hasNext()) throw new EOFException("Truncated code file");
+                byte b = buffer.get();
+                value |= (b & 0x7F) << shift;
+                if (b >= 0) return value;
             }
         }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+
+        /**
+         * HELPER: reads the next block of the file into the buffer.
+         */
+        private boolean fill() throws IOException {
+            buffer.clear();
+            int read;
+            do {
+                read = channel.read(buffer);
+            } while (read == 0);
+            buffer.flip();
+            return read > 0;
+        }
     }
 }
@@ -0,0 +1,405 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Long-running scoring service for a trained model, so that classifying a
+ * batch of examples costs a request rather than starting a JVM and training
+ * again. The server listens on the loopback interface only, and answers:
+ * <ul>
+ * <li>POST /classify: the body holds one example per line, as comma
+ * separated attribute values in training order, without a header line,
+ * and quoted as in training files; the response holds the class label of
+ * each, one per line, or an empty line for an example with an attribute
+ * value not seen in training.</li>
+ * <li>GET /stats: requests, examples and batches served so far, and the
+ * 50th and 99th percentiles of the latency of recent requests.</li>
+ * </ul>
+ * Each connection is handled on a virtual thread when the JVM has them
+ * (Java 21 onwards), and on a pooled platform thread otherwise. Handlers
+ * do not walk the tree themselves: they queue their examples for a single
+ * batching thread, which takes every request arriving within a latency
+ * bound of the first one, up to a batch size, and classifies them all in
+ * one call to ID3.predictLabels().
+ */
+public class ScoringServer {
+    private static final int LATENCY_SAMPLES = 1 << 16;
+
+    private final ID3 classifier;       // Model being served
+    private final int batchSize;        // Most examples in a batch
+    private final long maxDelay;        // Longest wait for a batch, in ns
+    private final HttpServer server;
+    private final ExecutorService connections;
+    private final BlockingQueue<Request> queue;
+    private final Thread batcher;
+    private final LatencyRecorder latencies;
+    private volatile boolean running;
+    private long batches;               // Written by the batcher only
+    private long examples;              // Written by the batcher only
+
+
+    /**
+     * Creates a server for a trained classifier, listening on the given
+     * port of the loopback interface once started.
+     *
+     * @param classifier      trained classifier
+     * @param port            port to listen on, or 0 for any free port
+     * @param batchSize       number of examples at which a batch is closed
+     * @param maxDelayMicros  longest time, in microseconds, that a request
+     *                        waits for others to join its batch
+     * @throws IOException if the port cannot be bound
+     */
+    public ScoringServer(ID3 classifier, int port, int batchSize,
+                         long maxDelayMicros) throws IOException {
+        this.classifier = classifier;
+        this.batchSize = batchSize;
+        this.maxDelay = TimeUnit.MICROSECONDS.toNanos(maxDelayMicros);
+
+        server = HttpServer.create(new InetSocketAddress(
+                InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext("/classify", this::classify);
+        server.createContext("/stats", this::stats);
+        connections = connectionExecutor();
+        server.setExecutor(connections);
+
+        queue = new LinkedBlockingQueue<>();
+        batcher = new Thread(this::batch, "id3-batcher");
+        batcher.setDaemon(true);
+        latencies = new LatencyRecorder(LATENCY_SAMPLES);
+    }
+
+
+    /**
+     * Application entry point for the scoring service.
+     *
+     * @param args model file written by ID3.save(), then optionally the
+     *             port (default 8080), the batch size (default 256) and the
+     *             batch latency bound in microseconds (default 200)
+     * @throws IOException if the model cannot be read or the port bound
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1 || args.length > 4) {
+            System.err.println("Expected arguments: model file"
+                    + " [port [batch size [max delay in microseconds]]]");
+            System.exit(1);
+        }
+
+        ID3 classifier = ID3.load(args[0]);
+        ScoringServer server = new ScoringServer(classifier,
+                args.length > 1 ? Integer.parseInt(args[1]) : 8080,
+                args.length > 2 ? Integer.parseInt(args[2]) : 256,
+                args.length > 3 ? Long.parseLong(args[3]) : 200);
+
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.stop();
+            System.err.print(server.statistics());
+        }));
+        server.start();
+        System.err.println("Serving " + args[0] + " on port " + server.port());
+    }
+
+
+    /**
+     * Starts accepting requests.
+     */
+    public void start() {
+        running = true;
+        batcher.start();
+        server.start();
+    }
+
+    /**
+     * Stops accepting requests, and waits for the requests being served.
+     */
+    public void stop() {
+        server.stop(1);
+        running = false;
+        batcher.interrupt();
+        connections.shutdown();
+    }
+
+    /**
+     * Returns the port the server listens on.
+     */
+    public int port() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Returns the given percentile of the latency of recent requests, from
+     * receiving a request to having classified its examples, in
+     * nanoseconds, or 0 if no request has been served.
+     *
+     * @param percentile percentile in (0, 100]
+     * @return latency at that percentile
+     */
+    public long latency(double percentile) {
+        return latencies.percentile(percentile);
+    }
+
+    /**
+     * Returns the figures reported by GET /stats.
+     */
+    public String statistics() {
+        long[] sorted = latencies.sorted();
+        synchronized (this) {
+            return "requests " + latencies.count() + "\n"
+                    + "examples " + examples + "\n"
+                    + "batches " + batches + "\n"
+                    + String.format("p50_ms %.3f\np99_ms %.3f\n",
+                    LatencyRecorder.percentile(sorted, 50) / 1e6,
+                    LatencyRecorder.percentile(sorted, 99) / 1e6);
+        }
+    }
+
+
+    /**
+     * Handles POST /classify, on a connection thread.
+     */
+    private void classify(HttpExchange exchange) throws IOException {
+        long start = System.nanoTime();
+        if (!"POST".equals(exchange.getRequestMethod())) {
+            respond(exchange, 405, "Use POST\n");
+            return;
+        }
+
+        String[][] batch = parse(exchange.getRequestBody());
+        for (int i = 0; i < batch.length; i++) {
+            if (batch[i].length < classifier.attributeCount()) {
+                respond(exchange, 400, "Expected "
+                        + classifier.attributeCount() + " values in example "
+                        + (i + 1) + "\n");
+                return;
+            }
+        }
+
+        Request request = new Request(batch);
+        queue.add(request);
+        String[] classes;
+        try {
+            classes = request.result.get();
+        } catch (InterruptedException e) {
+            respond(exchange, 503, "Server stopping\n");
+            Thread.currentThread().interrupt();
+            return;
+        } catch (CancellationException e) {
+            respond(exchange, 503, "Server stopping\n");
+            return;
+        } catch (ExecutionException e) {
+            respond(exchange, 500, e.getCause() + "\n");
+            return;
+        }
+
+        StringBuilder response = new StringBuilder();
+        for (String cls : classes)
+            response.append(cls == null ? "" : cls).append('\n');
+        latencies.record(System.nanoTime() - start);
+        respond(exchange, 200, response.toString());
+    }
+
+    /**
+     * Handles GET /stats, on a connection thread.
+     */
+    private void stats(HttpExchange exchange) throws IOException {
+        respond(exchange, 200, statistics());
+    }
+
+    /**
+     * Runs on the batching thread: takes the requests queued within
+     * maxDelay of the first one waiting, up to batchSize examples, and
+     * classifies them together.
+     */
+    private void batch() {
+        List<Request> requests = new ArrayList<>();
+
+        while (running) {
+            try {
+                Request first = queue.take();
+                long deadline = first.arrival + maxDelay;
+                int size = first.examples.length;
+                requests.add(first);
+
+                while (size < batchSize) {
+                    Request next = queue.poll(
+                            deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (next == null) break;
+                    requests.add(next);
+                    size += next.examples.length;
+                }
+
+                classify(requests, size);
+            } catch (InterruptedException e) {
+                // stop() interrupts to end the loop
+                for (Request request : requests)
+                    request.result.cancel(false);
+            } catch (Throwable e) {
+                // an Error fails its batch, not the batching thread, which
+                // would leave every later request waiting forever
+                for (Request request : requests)
+                    request.result.completeExceptionally(e);
+            }
+            requests.clear();
+        }
+
+        for (Request request; (request = queue.poll()) != null; )
+            request.result.cancel(false);
+    }
+
+    /**
+     * HELPER: classifies the examples of a batch of requests in one call,
+     * and hands each request its share of the classes.
+     */
+    private void classify(List<Request> requests, int size) {
+        String[][] batch = new String[size][];
+        int filled = 0;
+        for (Request request : requests) {
+            System.arraycopy(request.examples, 0, batch, filled,
+                    request.examples.length);
+            filled += request.examples.length;
+        }
+
+        String[] classes = classifier.predictLabels(batch);
+        synchronized (this) {
+            batches++;
+            examples += size;
+        }
+
+        int from = 0;
+        for (Request request : requests) {
+            int to = from + request.examples.length;
+            request.result.complete(Arrays.copyOfRange(classes, from, to));
+            from = to;
+        }
+    }
+
+    /**
+     * HELPER: reads the examples of a request body, one per record, by the
+     * rules ID3 reads CSV files with: quoted fields, empty fields and blank
+     * lines included.
+     */
+    private static String[][] parse(InputStream body) throws IOException {
+        List<String[]> examples = new ArrayList<>();
+        try (ID3.CsvReader reader = new ID3.CsvReader(body, "request")) {
+            while (reader.next()) {
+                String[] example = new String[reader.fields()];
+                for (int f = 0; f < example.length; f++)
+                    example[f] = reader.field(f);
+                examples.add(example);
+            }
+        }
+        return examples.toArray(new String[0][]);
+    }
+
+    /**
+     * HELPER: sends a plain text response and closes the exchange.
+     */
+    private static void respond(HttpExchange exchange, int status,
+                                String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type",
+                "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * HELPER: returns an executor starting a virtual thread per task where
+     * the JVM supports them, or a cached pool of platform threads.
+     */
+    private static ExecutorService connectionExecutor() {
+        try {
+            Method factory = Executors.class.getMethod(
+                    "newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException
+                | UnsupportedOperationException e) {
+            // virtual threads are final from Java 21
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+
+    /**
+     * Examples of one request waiting for their classes.
+     */
+    private static final class Request {
+        final String[][] examples;
+        final long arrival;
+        final CompletableFuture<String[]> result;
+
+
+        Request(String[][] examples) {
+            this.examples = examples;
+            this.arrival = System.nanoTime();
+            this.result = new CompletableFuture<>();
+        }
+    }
+
+
+    /**
+     * Keeps the latencies of the most recent requests, in a ring buffer,
+     * for percentiles to be computed on demand.
+     */
+    static final class LatencyRecorder {
+        private final long[] samples;
+        private long count;
+
+
+        LatencyRecorder(int capacity) {
+            samples = new long[capacity];
+        }
+
+
+        synchronized void record(long nanos) {
+            samples[(int) (count++ % samples.length)] = nanos;
+        }
+
+        synchronized long count() {
+            return count;
+        }
+
+        /**
+         * Returns the recorded latencies in ascending order.
+         */
+        synchronized long[] sorted() {
+            long[] sorted = Arrays.copyOf(samples,
+                    (int) Math.min(count, samples.length));
+            Arrays.sort(sorted);
+            return sorted;
+        }
+
+        long percentile(double percentile) {
+            return percentile(sorted(), percentile);
+        }
+
+        /**
+         * Returns the given percentile of sorted latencies, by the nearest
+         * rank method, or 0 if there are none.
+         */
+        static long percentile(long[] sorted, double percentile) {
+            if (sorted.length == 0) return 0;
+            int rank = (int) Math.ceil(percentile / 100 * sorted.length);
+            return sorted[Math.max(rank, 1) - 1];
+        }
+    }
+}
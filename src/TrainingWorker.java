@@ -0,0 +1,234 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+
+/**
+ * Worker process for ID3.trainDistributed(), holding a share of the
+ * training examples in memory and counting them level by level for the
+ * coordinator. A worker serves one coordinator at a time, over a TCP
+ * connection on which the coordinator sends requests, each a byte followed
+ * by big-endian ints:
+ * <ul>
+ * <li>ROW: the number of fields of an example, then its codes, attributes
+ * then class, as dictionary-encoded by the coordinator.</li>
+ * <li>START: the number of values of each attribute and of the class,
+ * ending the examples; all of them are in the root of the tree.</li>
+ * <li>COUNT: the splits of the previous level and the candidate attributes
+ * of each node of the current level, as tables (see writeTable()), and the
+ * range of slots to count; the worker moves its examples to their nodes,
+ * and answers with the counts of the range, as written by
+ * ID3.Counts.write().</li>
+ * </ul>
+ * The examples are dropped when the coordinator closes the connection.
+ */
+public class TrainingWorker {
+    static final int ROW = 1;
+    static final int START = 2;
+    static final int COUNT = 3;
+
+    private final ServerSocket server;
+    private final Thread acceptor;
+    private volatile boolean running;
+
+
+    /**
+     * Creates a worker listening on the given address and port once
+     * started.
+     *
+     * @param address address to listen on, such as the loopback address
+     * @param port    port to listen on, or 0 for any free port
+     * @throws IOException if the port cannot be bound
+     */
+    public TrainingWorker(InetAddress address, int port) throws IOException {
+        server = new ServerSocket(port, 0, address);
+        acceptor = new Thread(this::accept, "id3-worker");
+        acceptor.setDaemon(true);
+    }
+
+
+    /**
+     * Application entry point for a training worker.
+     *
+     * @param args optionally the port (default 9090), then the address to
+     *             listen on (default the loopback address; coordinators on
+     *             other hosts need an address they can reach)
+     * @throws IOException          if the port cannot be bound
+     * @throws InterruptedException if interrupted while serving
+     */
+    public static void main(String[] args)
+            throws IOException, InterruptedException {
+        if (args.length > 2) {
+            System.err.println("Expected arguments: [port [address]]");
+            System.exit(1);
+        }
+
+        TrainingWorker worker = new TrainingWorker(args.length > 1
+                ? InetAddress.getByName(args[1])
+                : InetAddress.getLoopbackAddress(),
+                args.length > 0 ? Integer.parseInt(args[0]) : 9090);
+        Runtime.getRuntime().addShutdownHook(new Thread(worker::stop));
+        System.err.println("Training worker on "
+                + worker.server.getLocalSocketAddress());
+        worker.start();
+        worker.acceptor.join();
+    }
+
+
+    /**
+     * Starts accepting coordinators, on a thread of the worker's own.
+     */
+    public void start() {
+        running = true;
+        acceptor.start();
+    }
+
+    /**
+     * Stops accepting coordinators. A training run being served ends when
+     * its coordinator closes the connection.
+     */
+    public void stop() {
+        running = false;
+        try {
+            server.close();
+        } catch (IOException e) {
+            // nothing left to release
+        }
+    }
+
+    /**
+     * Returns the port the worker listens on.
+     */
+    public int port() {
+        return server.getLocalPort();
+    }
+
+
+    /**
+     * Accepts coordinators, serving each in turn until the worker stops.
+     */
+    private void accept() {
+        while (running) {
+            try (Socket socket = server.accept()) {
+                socket.setTcpNoDelay(true);
+                serve(socket);
+            } catch (SocketException e) {
+                // stop() closes the server socket to end the loop
+                if (running) System.err.println("Connection failed: " + e);
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Training run failed: " + e);
+            }
+        }
+    }
+
+    /**
+     * HELPER: answers the requests of one coordinator, until it closes the
+     * connection.
+     */
+    private static void serve(Socket socket) throws IOException {
+        DataInputStream in = new DataInputStream(
+                new BufferedInputStream(socket.getInputStream()));
+        DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(socket.getOutputStream()));
+        ID3.PartitionCounter partition = new ID3.PartitionCounter();
+
+        for (int request; (request = in.read()) >= 0; ) {
+            switch (request) {
+                case ROW:
+                    int width = in.readInt();
+                    for (int c = 0; c < width; c++)
+                        partition.add(c, in.readInt());
+                    break;
+                case START:
+                    partition.start(readInts(in));
+                    break;
+                case COUNT:
+                    int[][] routing = readTable(in);
+                    int[][] candidates = readTable(in);
+                    int from = in.readInt();
+                    int to = in.readInt();
+                    partition.count(routing, candidates, from, to).write(out);
+                    out.flush();
+                    break;
+                default:
+                    throw new IOException("Unknown request " + request);
+            }
+        }
+    }
+
+    /**
+     * Writes an array of ints as its length followed by its elements, or
+     * as -1 for null.
+     *
+     * @param out    stream to write to
+     * @param values ints to write, or null
+     * @throws IOException if the stream cannot be written
+     */
+    static void writeInts(DataOutputStream out, int[] values)
+            throws IOException {
+        if (values == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(values.length);
+        for (int value : values)
+            out.writeInt(value);
+    }
+
+    /**
+     * Reads an array of ints written by writeInts().
+     *
+     * @param in stream to read from
+     * @return ints read, or null
+     * @throws IOException if the stream cannot be read or ends early
+     */
+    static int[] readInts(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) return null;
+        int[] values = new int[length];
+        for (int i = 0; i < length; i++)
+            values[i] = in.readInt();
+        return values;
+    }
+
+    /**
+     * Writes a table of int arrays, any of which, or the table itself, may
+     * be null, as the number of rows followed by each row as writeInts()
+     * writes it.
+     *
+     * @param out   stream to write to
+     * @param table rows to write, or null
+     * @throws IOException if the stream cannot be written
+     */
+    static void writeTable(DataOutputStream out, int[][] table)
+            throws IOException {
+        if (table == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(table.length);
+        for (int[] row : table)
+            writeInts(out, row);
+    }
+
+    /**
+     * Reads a table written by writeTable().
+     *
+     * @param in stream to read from
+     * @return table read, or null
+     * @throws IOException if the stream cannot be read or ends early
+     */
+    static int[][] readTable(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) return null;
+        int[][] table = new int[length][];
+        for (int i = 0; i < length; i++)
+            table[i] = readInts(in);
+        return table;
+    }
+}
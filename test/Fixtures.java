@@ -0,0 +1,172 @@
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Data shared by the tests: the fixtures in data/, whose learnt trees and
+ * classifications are recorded in results/, and generated datasets large
+ * enough to reach the paths taken only by large nodes and training sets.
+ */
+final class Fixtures {
+    static final String[] FIXTURES = {
+            "simple", "realEstate", "imperfectClassification", "oneClass",
+            "threeClasses"
+    };
+
+
+    private Fixtures() {
+    }
+
+
+    /**
+     * Prints the tree of a trained classifier and classifies the test file of
+     * a fixture, returning everything written to standard output.
+     */
+    static String run(ID3 classifier, String fixture) throws IOException {
+        return output(() -> {
+            classifier.printTree();
+            classifier.classify("data/" + fixture + "Test.csv");
+        });
+    }
+
+    /**
+     * Returns the tree of a trained classifier, as printTree() prints it.
+     */
+    static String tree(ID3 classifier) throws IOException {
+        return output(classifier::printTree);
+    }
+
+    static String trainingFile(String fixture) {
+        return "data/" + fixture + "Train.csv";
+    }
+
+    static String recordedResult(String fixture) throws IOException {
+        return new String(Files.readAllBytes(
+                Paths.get("results/" + fixture + "Test.actual.out")),
+                StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads a CSV file without quoted fields, header line included.
+     */
+    static String[][] parse(String file) throws IOException {
+        return Files.readAllLines(Paths.get(file)).stream()
+                .map(line -> line.split(","))
+                .toArray(String[][]::new);
+    }
+
+    /**
+     * Generates a training set with a header line. The class of an example
+     * is the sum of the codes of its first three attributes modulo the
+     * number of classes, replaced by a random class with probability noise,
+     * so that trees grow deep and wide. Half of the values of an attribute
+     * are its first one, so most splits keep one large branch.
+     *
+     * @param rows        number of examples
+     * @param attributes  number of attributes, at least three
+     * @param cardinality number of values of each attribute
+     * @param classes     number of classes
+     * @param noise       probability of an example having a random class
+     * @param seed        random seed
+     * @return training data, class in last column
+     */
+    static String[][] generate(int rows, int attributes, int cardinality,
+                               int classes, double noise, long seed) {
+        Random random = new Random(seed);
+        String[][] data = new String[rows + 1][attributes + 1];
+        for (int attr = 0; attr < attributes; attr++)
+            data[0][attr] = "a" + attr;
+        data[0][attributes] = "class";
+
+        for (int row = 1; row <= rows; row++) {
+            int sum = 0;
+            for (int attr = 0; attr < attributes; attr++) {
+                int code = random.nextBoolean()
+                        ? 0 : random.nextInt(cardinality);
+                if (attr < 3) sum += code;
+                data[row][attr] = "v" + code;
+            }
+            int cls = random.nextDouble() < noise
+                    ? random.nextInt(classes) : sum % classes;
+            data[row][attributes] = "k" + cls;
+        }
+        return data;
+    }
+
+    /**
+     * Returns the examples of training data without the header line, as
+     * predict() takes them.
+     */
+    static String[][] examples(String[][] data) {
+        return Arrays.copyOfRange(data, 1, data.length);
+    }
+
+    /**
+     * Writes training data to a CSV file.
+     */
+    static void write(String[][] data, Path file) throws IOException {
+        try (BufferedWriter out = Files.newBufferedWriter(file)) {
+            for (String[] row : data) {
+                out.write(String.join(",", row));
+                out.newLine();
+            }
+        }
+    }
+
+    /**
+     * Returns what the given code writes to standard output.
+     */
+    static String output(Output code) throws IOException {
+        PrintStream stdout = System.out;
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        System.setOut(new PrintStream(output, true, "UTF-8"));
+        try {
+            code.run();
+        } finally {
+            System.setOut(stdout);
+        }
+
+        return new String(output.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+
+    /**
+     * Code writing to standard output.
+     */
+    interface Output {
+        void run() throws IOException;
+    }
+
+
+    /**
+     * Listener keeping the figures of every training run.
+     */
+    static final class Recorder implements ID3.Listener {
+        final List<ID3.TrainingStats> trained = new ArrayList<>();
+        final List<Integer> classified = new ArrayList<>();
+
+        @Override
+        public void trained(ID3.TrainingStats stats) {
+            trained.add(stats);
+        }
+
+        @Override
+        public void classified(int examples, long nanos) {
+            classified.add(examples);
+        }
+
+        ID3.TrainingStats last() {
+            return trained.get(trained.size() - 1);
+        }
+    }
+}
@@ -1,6 +1,721 @@
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
 /**
  * White-box tests to assess the correctness of the implementation of the learning
  * algorithm.
  */
 public class ImplementationTests {
+
+    @Test
+    public void learntTreesMatchRecordedResults() throws IOException {
+        for (String fixture : Fixtures.FIXTURES) {
+            ID3 classifier = new ID3();
+            classifier.train(Fixtures.trainingFile(fixture));
+
+            assertEquals(fixture, Fixtures.recordedResult(fixture),
+                    Fixtures.run(classifier, fixture));
+        }
+    }
+
+    @Test
+    public void parallelTrainingLearnsSameTree() throws IOException {
+        String[][] data = Fixtures.generate(20000, 8, 4, 3, 0.1, 1);
+        Fixtures.Recorder figures = new Fixtures.Recorder();
+        ID3 sequential = new ID3();
+        sequential.setListener(figures);
+        sequential.train(data);
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            // the root and its children fork, smaller and deeper nodes not
+            ID3 parallel = new ID3();
+            parallel.setParallelSplitSearch(pool, 5000);
+            parallel.setParallelTreeGrowth(pool, 2000, 2);
+            parallel.setListener(figures);
+            parallel.train(data);
+
+            assertEquals(Fixtures.tree(sequential), Fixtures.tree(parallel));
+            ID3.TrainingStats expected = figures.trained.get(0);
+            ID3.TrainingStats actual = figures.trained.get(1);
+            assertArrayEquals(expected.nodesPerDepth(),
+                    actual.nodesPerDepth());
+            assertEquals(expected.gainEvaluations(),
+                    actual.gainEvaluations());
+
+            // forked subtrees count their tables rather than derive them
+            assertEquals(data.length - 1, actual.rowsScannedPerDepth()[1]);
+            assertTrue(expected.rowsScannedPerDepth()[1] < data.length - 1);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void largestBranchesAreDerivedRatherThanCounted()
+            throws IOException {
+        String[][] data = Fixtures.generate(20000, 8, 4, 3, 0.1, 31);
+        Path directory = Files.createTempDirectory("id3");
+        Path file = directory.resolve("train.csv");
+        Fixtures.Recorder figures = new Fixtures.Recorder();
+        try {
+            Fixtures.write(data, file);
+            ID3 classifier = new ID3();
+            classifier.setListener(figures);
+            classifier.train(data);
+
+            // out of core, every node split is counted in full
+            ID3 counted = new ID3();
+            counted.setListener(figures);
+            counted.trainOutOfCore(file.toString(), directory.toString());
+            assertEquals(Fixtures.tree(counted), Fixtures.tree(classifier));
+
+            long[] derived = figures.trained.get(0).rowsScannedPerDepth();
+            long[] sizes = figures.trained.get(1).rowsScannedPerDepth();
+            assertEquals(sizes[0], derived[0]);
+            for (int depth = 1; depth < sizes.length; depth++)
+                if (sizes[depth] > 0)
+                    assertTrue(depth + ": " + derived[depth] + " of "
+                            + sizes[depth], derived[depth] < sizes[depth]);
+            assertTrue(sizes[1] > 0);
+        } finally {
+            Files.delete(file);
+            Files.delete(directory);
+        }
+    }
+
+    @Test
+    public void entropyTableSizeDoesNotChangeTree() throws IOException {
+        // counts above the table's largest are computed, below looked up
+        String[][] data = Fixtures.generate(20000, 8, 4, 3, 0.1, 2);
+        Fixtures.Recorder figures = new Fixtures.Recorder();
+        List<String> trees = new ArrayList<>();
+        for (int size : new int[]{0, 100, 1 << 17}) {
+            ID3 classifier = new ID3();
+            classifier.setEntropyTableSize(size);
+            classifier.setListener(figures);
+            classifier.train(data);
+            trees.add(Fixtures.tree(classifier));
+        }
+
+        for (int i = 1; i < trees.size(); i++) {
+            assertEquals(trees.get(0), trees.get(i));
+            assertEquals(figures.trained.get(0).exactGainEvaluations(),
+                    figures.trained.get(i).exactGainEvaluations());
+        }
+
+        // the shared table of the default size
+        ID3 classifier = new ID3();
+        classifier.train(data);
+        assertEquals(trees.get(0), Fixtures.tree(classifier));
+
+        try {
+            classifier.setEntropyTableSize(-1);
+            fail("negative size accepted");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void limitsStopGrowthAtMajorityLeaves() throws IOException {
+        String[][] data = Fixtures.generate(20000, 8, 4, 3, 0.1, 3);
+        Path directory = Files.createTempDirectory("id3");
+        Path file = directory.resolve("train.csv");
+        Fixtures.write(data, file);
+        Fixtures.Recorder figures = new Fixtures.Recorder();
+        ID3 unlimited = new ID3();
+        unlimited.setListener(figures);
+        unlimited.train(data);
+        ID3.TrainingStats full = figures.last();
+
+        try {
+            // limits cut the tree the same way in memory and out of core
+            double[][] limits = {{2, 0, 0}, {0, 1000, 0}, {0, 0, 0.05}};
+            for (double[] limit : limits) {
+                ID3 classifier = new ID3();
+                classifier.setLimits((int) limit[0], (int) limit[1],
+                        limit[2], 0, 0);
+                classifier.setListener(figures);
+                classifier.train(data);
+                ID3.TrainingStats stats = figures.last();
+
+                ID3 outOfCore = new ID3();
+                outOfCore.setLimits((int) limit[0], (int) limit[1],
+                        limit[2], 0, 0);
+                outOfCore.trainOutOfCore(file.toString(),
+                        directory.toString());
+
+                String message = Arrays.toString(limit);
+                assertEquals(message, Fixtures.tree(classifier),
+                        Fixtures.tree(outOfCore));
+                assertTrue(message, stats.treeSize() < full.treeSize());
+            }
+            assertEquals(2, figures.trained.get(1).treeDepth());
+
+            ID3 bounded = new ID3();
+            bounded.setLimits(0, 0, 0, 100, 0);
+            bounded.setListener(figures);
+            bounded.train(data);
+            assertTrue(figures.last().treeSize() <= 100);
+
+            ID3 single = new ID3();
+            single.setLimits(0, 0, 0, 1, 0);
+            single.train(data);
+            assertTrue(Fixtures.tree(single).startsWith("Class: "));
+        } finally {
+            Files.delete(file);
+            Files.delete(directory);
+        }
+    }
+
+    @Test
+    public void sampledSplitsSettleOnlyClearQuestions() throws IOException {
+        Fixtures.Recorder figures = new Fixtures.Recorder();
+
+        // a class given by one attribute is settled on the first sample
+        Random random = new Random(3);
+        String[][] data = new String[20001][];
+        data[0] = new String[]{"a", "b", "c", "class"};
+        for (int i = 1; i < data.length; i++) {
+            int a = random.nextInt(4);
+            data[i] = new String[]{"a" + a, "b" + random.nextInt(4),
+                    "c" + random.nextInt(4), "k" + a % 2};
+        }
+        String[][] examples = Fixtures.examples(data);
+
+        ID3 exact = new ID3();
+        exact.train(data);
+        ID3 sampled = new ID3();
+        sampled.setSampledSplits(500, 1e-6);
+        sampled.setListener(figures);
+        sampled.train(data);
+
+        assertArrayEquals(exact.predict(examples), sampled.predict(examples));
+        assertEquals(500, figures.last().rowsScannedPerDepth()[0]);
+
+        // classes unrelated to the attributes are too close to call, so
+        // the root is counted in full after its samples
+        String[][] noise = Fixtures.generate(20000, 4, 4, 2, 1, 4);
+        exact = new ID3();
+        exact.train(noise);
+        sampled = new ID3();
+        sampled.setSampledSplits(500, 1e-6);
+        sampled.setListener(figures);
+        sampled.train(noise);
+
+        assertEquals(Fixtures.tree(exact), Fixtures.tree(sampled));
+        assertTrue(figures.last().rowsScannedPerDepth()[0] > 20000);
+    }
+
+    @Test
+    public void parsedDataLearnsSameTreeAsFile() throws IOException {
+        String[][] data = Fixtures.generate(20000, 8, 50, 3, 0.1, 5);
+        Path file = Files.createTempFile("id3", ".csv");
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            Fixtures.write(data, file);
+            ID3 fromFile = new ID3();
+            fromFile.train(file.toString());
+
+            ID3 classifier = new ID3();
+            classifier.setParallelIndexing(pool);
+            classifier.train(data);
+
+            assertEquals(Fixtures.tree(fromFile), Fixtures.tree(classifier));
+            assertArrayEquals(fromFile.predict(Fixtures.examples(data)),
+                    classifier.predict(Fixtures.examples(data)));
+        } finally {
+            pool.shutdown();
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void csvReaderDecodesQuotesAndLineEnds() throws IOException {
+        Path file = Files.createTempFile("id3", ".csv");
+        try {
+            Files.write(file, ("a,b,c\r\n"
+                    + "\"a,b\",\"say \"\"hi\"\"\",\r\n"
+                    + "\r\n"
+                    + "x,,\n"
+                    + "\"two\nlines\",y,z").getBytes(StandardCharsets.UTF_8));
+            String[][] expected = {
+                    {"a", "b", "c"},
+                    {"a,b", "say \"hi\"", ""},
+                    {"x", "", ""},
+                    {"two\nlines", "y", "z"}
+            };
+            int[] lines = {1, 2, 4, 6};
+
+            try (ID3.CsvReader reader = new ID3.CsvReader(file.toString())) {
+                for (int i = 0; i < expected.length; i++) {
+                    assertTrue(reader.next());
+                    String[] fields = new String[reader.fields()];
+                    for (int f = 0; f < fields.length; f++)
+                        fields[f] = reader.field(f);
+                    assertArrayEquals(expected[i], fields);
+                    assertEquals(lines[i], reader.line());
+                }
+                assertFalse(reader.next());
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void csvReaderRejectsShortRows() throws IOException {
+        Path file = Files.createTempFile("id3", ".csv");
+        try {
+            Files.write(file, "a,b,class\r\nx,y,k\r\nx,k\r\n"
+                    .getBytes(StandardCharsets.UTF_8));
+            try (ID3.CsvReader reader = new ID3.CsvReader(file.toString())) {
+                reader.next();
+                reader.next();
+                reader.expect(3);
+                reader.next();
+                assertEquals(2, reader.fields());
+                assertEquals("x", reader.field(0));
+                assertEquals("k", reader.field(1));
+            }
+
+            try {
+                new ID3().train(file.toString());
+                fail("short row accepted");
+            } catch (IOException e) {
+                assertEquals("Scan error in " + file + " at line 3: "
+                        + "2 fields instead of 3", e.getMessage());
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void outOfCoreTrainingLearnsSameTree() throws IOException {
+        String[][] data = Fixtures.generate(20000, 8, 4, 3, 0.1, 6);
+        Path directory = Files.createTempDirectory("id3");
+        Path file = Files.createTempFile("id3", ".csv");
+        Fixtures.Recorder figures = new Fixtures.Recorder();
+        try {
+            Fixtures.write(data, file);
+            ID3 inMemory = new ID3();
+            inMemory.train(data);
+
+            // about 20 nodes of 8 candidates fit the budget of a pass
+            ID3 classifier = new ID3();
+            classifier.setOutOfCoreBudget(2000);
+            classifier.setListener(figures);
+            classifier.trainOutOfCore(file.toString(), directory.toString());
+
+            assertEquals(Fixtures.tree(inMemory), Fixtures.tree(classifier));
+            long[] passes = figures.last().passesPerDepth();
+            assertEquals(1, passes[0]);
+            assertTrue(Arrays.toString(passes),
+                    Arrays.stream(passes).max().getAsLong() > 1);
+            assertEquals(0, directory.toFile().list().length);
+        } finally {
+            Files.delete(directory);
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void cachedColumnsLearnSameTreeUntilFileChanges()
+            throws IOException {
+        String[][] data = Fixtures.generate(20000, 8, 4, 3, 0.1, 7);
+        Path directory = Files.createTempDirectory("id3");
+        Path copy = Files.createTempFile("id3", ".csv");
+        try {
+            Fixtures.write(data, copy);
+            ID3 parsed = new ID3();
+            parsed.train(data);
+
+            // the first run writes the cache, the second trains from it
+            for (int run = 0; run < 2; run++) {
+                ID3 classifier = new ID3();
+                classifier.setColumnCache(directory.toString());
+                classifier.train(copy.toString());
+
+                assertEquals(Fixtures.tree(parsed), Fixtures.tree(classifier));
+                assertEquals(1, directory.toFile().list().length);
+            }
+
+            // an edit in the middle of the file keeping its size and
+            // modification time is encoded again, over its old cache
+            String[][] edited = data.clone();
+            for (int row = 5000; row < 15000; row++) {
+                edited[row] = data[row].clone();
+                int cls = data[row][8].charAt(1) - '0';
+                edited[row][8] = "k" + (cls + 1) % 3;
+            }
+            ID3 parsedEdit = new ID3();
+            parsedEdit.train(edited);
+            long size = Files.size(copy);
+            FileTime modified = Files.getLastModifiedTime(copy);
+            Fixtures.write(edited, copy);
+            Files.setLastModifiedTime(copy, modified);
+            assertEquals(size, Files.size(copy));
+
+            ID3 after = new ID3();
+            after.setColumnCache(directory.toString());
+            after.train(copy.toString());
+
+            assertEquals(Fixtures.tree(parsedEdit), Fixtures.tree(after));
+            assertNotEquals(Fixtures.tree(parsed), Fixtures.tree(after));
+            assertEquals(1, directory.toFile().list().length);
+
+            // a damaged count of columns or rows is a miss, not an error
+            Path cache = directory.toFile().listFiles()[0].toPath();
+            for (int offset : new int[]{32, 36}) {
+                try (FileChannel channel = FileChannel.open(cache,
+                        StandardOpenOption.WRITE)) {
+                    ByteBuffer count = ByteBuffer.allocate(Integer.BYTES);
+                    channel.write(count.putInt(0, Integer.MAX_VALUE),
+                            offset);
+                }
+                ID3 damaged = new ID3();
+                damaged.setColumnCache(directory.toString());
+                damaged.train(copy.toString());
+                assertEquals(Fixtures.tree(parsedEdit),
+                        Fixtures.tree(damaged));
+            }
+        } finally {
+            for (File file : directory.toFile().listFiles())
+                Files.delete(file.toPath());
+            Files.delete(directory);
+            Files.delete(copy);
+        }
+    }
+
+    @Test
+    public void offHeapTrainingLearnsSameTree() throws IOException {
+        String[][] data = Fixtures.generate(5000, 4, 300, 3, 0.1, 8);
+        Path directory = Files.createTempDirectory("id3");
+        Path csv = directory.resolve("train.csv");
+        try {
+            Fixtures.write(data, csv);
+            ID3 onHeap = new ID3();
+            onHeap.train(data);
+
+            // two-byte codes for the attributes, one for the class
+            ID3 classifier = new ID3();
+            classifier.setOffHeapStorage(true);
+            classifier.train(data);
+            assertEquals(Fixtures.tree(onHeap), Fixtures.tree(classifier));
+
+            // mapped from the column cache on the second run
+            for (int run = 0; run < 2; run++) {
+                ID3 cached = new ID3();
+                cached.setOffHeapStorage(true);
+                cached.setColumnCache(directory.toString());
+                cached.train(csv.toString());
+                assertEquals(Fixtures.tree(onHeap), Fixtures.tree(cached));
+            }
+        } finally {
+            for (File file : directory.toFile().listFiles())
+                Files.delete(file.toPath());
+            Files.delete(directory);
+        }
+    }
+
+    @Test
+    public void closedStoreLeavesNoColumnToRead() {
+        ID3.OffHeapStore store = new ID3.OffHeapStore();
+        ID3.Column rows = store.rows(3);
+        rows.set(2, 7);
+        assertEquals(7, rows.get(2));
+
+        store.close();
+        try {
+            rows.get(2);
+            fail("read a released column");
+        } catch (NullPointerException e) {
+            // the buffer is gone rather than freed under the column
+        }
+    }
+
+    @Test
+    public void bufferColumnsSplitPastTwoGigabytes() {
+        // the most rows of 4-byte codes take 8 buffers, the last one short
+        int rows = Integer.MAX_VALUE;
+        assertEquals(8, ID3.BufferColumn.buffers(Integer.BYTES, rows));
+        assertEquals(1 << 30,
+                ID3.BufferColumn.bufferSize(Integer.BYTES, rows, 6));
+        assertEquals((1 << 30) - 4, ID3.BufferColumn.bufferSize(
+                Integer.BYTES, rows, 7));
+        assertEquals(2, ID3.BufferColumn.buffers(Byte.BYTES, rows));
+        assertEquals(0, ID3.BufferColumn.buffers(Short.BYTES, 0));
+    }
+
+    @Test
+    public void updatesLearnSameTreeAsTrainingOnAllExamples()
+            throws IOException {
+        String[][] data = Fixtures.generate(10000, 6, 4, 3, 0.1, 9);
+        Fixtures.Recorder figures = new Fixtures.Recorder();
+        ID3 full = new ID3();
+        full.train(data);
+
+        ID3 classifier = new ID3();
+        classifier.setIncremental(true);
+        classifier.setListener(figures);
+        classifier.train(Arrays.copyOf(data, 2001));
+        for (int row = 2001; row < data.length; row += 2000) {
+            String[][] batch = Stream.concat(Stream.<String[]>of(data[0]),
+                    Arrays.stream(data, row, row + 2000))
+                    .toArray(String[][]::new);
+            classifier.update(batch);
+            assertEquals(2000, figures.last().examples());
+        }
+
+        assertEquals(Fixtures.tree(full), Fixtures.tree(classifier));
+        assertArrayEquals(full.predict(Fixtures.examples(data)),
+                classifier.predict(Fixtures.examples(data)));
+        assertEquals(5, figures.trained.size());
+    }
+
+    @Test
+    public void predictReturnsClassOfEachExample() throws IOException {
+        ID3 classifier = new ID3();
+        classifier.train(Fixtures.trainingFile("realEstate"));
+
+        String[][] examples = {
+                {"Suburban", "Detached", "High", "No"},
+                {"Rural", "Terrace", "Low", "Yes"},
+                {" Urban ", "Terrace", "High", "Yes"},
+                {"Coastal", "Terrace", "High", "Yes"}
+        };
+
+        assertArrayEquals(new String[]{"No", "Yes", "No", null},
+                classifier.predictLabels(examples));
+        assertEquals(-1, classifier.predict(examples)[3]);
+    }
+
+    @Test
+    public void classifyPrintsEmptyLineForUnseenValue() throws IOException {
+        ID3 classifier = new ID3();
+        classifier.train(Fixtures.trainingFile("realEstate"));
+        Path test = Files.createTempFile("id3", ".csv");
+        try {
+            Files.write(test, Arrays.asList(
+                    "Location,House Type,Lifestyle,Previous Customer",
+                    "Suburban,Detached,High,No",
+                    "Coastal,Terrace,High,Yes",
+                    "Rural,Terrace,Low,Yes"));
+            String[][] data = Fixtures.parse(test.toString());
+
+            assertEquals("No\n\nYes\n", Fixtures.output(
+                    () -> classifier.classify(test.toString())));
+            assertEquals("No\n\nYes\n", Fixtures.output(
+                    () -> classifier.classify(data)));
+        } finally {
+            Files.delete(test);
+        }
+    }
+
+    @Test
+    public void histogramKernelsCountAlike() throws IOException {
+        ID3.HistogramKernel preferred = ID3.HistogramKernel.preferred();
+        ID3.HistogramKernel scalar = new ID3.ScalarHistogram();
+        Random random = new Random(7);
+        for (int cells : new int[]{1, 2, 8, 15, 30, ID3.HISTOGRAM_CELLS}) {
+            byte[] keys = new byte[ID3.HISTOGRAM_ROWS];
+            for (int i = 0; i < keys.length; i++)
+                keys[i] = (byte) random.nextInt(cells);
+            for (int n : new int[]{0, 1, 63, 65, keys.length}) {
+                int[] expected = new int[cells + 3];
+                int[] actual = new int[cells + 3];
+                scalar.count(keys, n, cells, expected, 3);
+                preferred.count(keys, n, cells, actual, 3);
+                assertArrayEquals(cells + " cells, " + n + " keys",
+                        expected, actual);
+            }
+        }
+
+        // every example repeated: same gains, but counted in chunks
+        for (String fixture : Fixtures.FIXTURES) {
+            String[][] data = Fixtures.parse(Fixtures.trainingFile(fixture));
+            int copies = 2 * ID3.HISTOGRAM_ROWS / (data.length - 1) + 1;
+            String[][] repeated = new String[(data.length - 1) * copies + 1][];
+            repeated[0] = data[0];
+            for (int i = 1; i < repeated.length; i++)
+                repeated[i] = data[(i - 1) % (data.length - 1) + 1];
+
+            ID3 classifier = new ID3();
+            classifier.train(repeated);
+            assertEquals(fixture, Fixtures.recordedResult(fixture),
+                    Fixtures.run(classifier, fixture));
+        }
+    }
+
+    @Test
+    public void labelTableFindsEveryTrimmedLabel() {
+        String[] labels = new String[1000];
+        for (int i = 0; i < labels.length; i++)
+            labels[i] = i % 2 == 0 ? "v" + i : " v" + i + " ";
+        ID3.LabelTable table = new ID3.LabelTable(labels, labels.length);
+
+        for (int i = 0; i < labels.length; i++)
+            assertEquals(i, table.code("v" + i));
+        assertEquals(-1, table.code("v1000"));
+        assertEquals(0, new ID3.LabelTable(
+                new String[]{"a", " a", "b"}, 3).code("a"));
+    }
+
+    @Test
+    public void ensembleDoesNotDependOnPool() {
+        String[][] data = Fixtures.generate(5000, 8, 4, 3, 0.1, 10);
+        String[][] examples =
+                Fixtures.examples(Fixtures.generate(1000, 8, 4, 3, 0.1, 11));
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            ID3 sequential = new ID3();
+            sequential.setEnsemble(null, 20, 3, 42);
+            sequential.train(data);
+            ID3 parallel = new ID3();
+            parallel.setEnsemble(pool, 20, 3, 42);
+            parallel.train(data);
+
+            assertArrayEquals(sequential.predict(examples),
+                    parallel.predict(examples));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void crossValidationCountsEveryExampleOnceWithAnyPool()
+            throws IOException {
+        String[][] data = Fixtures.generate(5000, 6, 4, 3, 0.1, 12);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            ID3.CrossValidation sequential =
+                    new ID3().crossValidate(null, data, 5, 7);
+            ID3.CrossValidation parallel =
+                    new ID3().crossValidate(pool, data, 5, 7);
+            ID3 offHeap = new ID3();
+            offHeap.setOffHeapStorage(true);
+            ID3.CrossValidation offHeapFolds =
+                    offHeap.crossValidate(pool, data, 5, 7);
+
+            int total = 0;
+            for (int[] actual : sequential.confusionMatrix())
+                for (int count : actual) total += count;
+            assertEquals(data.length - 1, total);
+            assertEquals(5, sequential.folds());
+            for (int fold = 0; fold < 5; fold++) {
+                int size = 0;
+                for (int[] actual : sequential.confusionMatrix(fold))
+                    for (int count : actual) size += count;
+                assertEquals(1000, size);
+                assertArrayEquals(sequential.confusionMatrix(fold),
+                        parallel.confusionMatrix(fold));
+                assertArrayEquals(sequential.confusionMatrix(fold),
+                        offHeapFolds.confusionMatrix(fold));
+            }
+            // a tenth of the classes are noise, a third of which is right
+            assertEquals(0.933, sequential.accuracy(), 0.02);
+        } finally {
+            pool.shutdown();
+        }
+
+        String[][] oneClass =
+                Fixtures.parse(Fixtures.trainingFile("oneClass"));
+        assertEquals(1.0,
+                new ID3().crossValidate(null, oneClass, 2, 7).accuracy(), 0);
+    }
+
+    @Test
+    public void listenerReceivesFiguresOfTrainingAndScoring() {
+        String[][] data = Fixtures.generate(20000, 8, 4, 3, 0.1, 13);
+        Fixtures.Recorder figures = new Fixtures.Recorder();
+        ID3 classifier = new ID3();
+        classifier.setListener(figures);
+        classifier.train(data);
+        classifier.predict(Fixtures.examples(data));
+
+        ID3.TrainingStats stats = figures.last();
+        long[] nodes = stats.nodesPerDepth();
+        assertEquals(1, figures.trained.size());
+        assertEquals(data.length - 1, stats.examples());
+        assertEquals(1, nodes[0]);
+        assertTrue(Arrays.stream(nodes).sum() <= stats.treeSize());
+        assertTrue(nodes[stats.treeDepth()] > 0);
+        assertEquals(0, stats.treeDepth() + 1 < nodes.length
+                ? nodes[stats.treeDepth() + 1] : 0);
+        assertEquals(stats.examples(), stats.rowsScannedPerDepth()[0]);
+        assertEquals(0, Arrays.stream(stats.passesPerDepth()).sum());
+        assertTrue(stats.gainEvaluations() >= stats.cardinalities().length - 1);
+        assertTrue(stats.exactGainEvaluations() <= stats.gainEvaluations());
+        assertEquals(Arrays.asList(data.length - 1), figures.classified);
+    }
+
+    @Test
+    public void loadedModelClassifiesLikeTrainedOne() throws IOException {
+        File model = File.createTempFile("id3", ".model");
+        try {
+            for (String fixture : Fixtures.FIXTURES) {
+                ID3 classifier = new ID3();
+                classifier.train(Fixtures.trainingFile(fixture));
+                classifier.save(model.getPath());
+
+                assertEquals(fixture, Fixtures.recordedResult(fixture),
+                        Fixtures.run(ID3.load(model.getPath()), fixture));
+            }
+        } finally {
+            model.delete();
+        }
+    }
+
+    @Test
+    public void damagedModelFailsToLoadWithIOException() throws IOException {
+        Path model = Files.createTempFile("id3", ".model");
+        try {
+            ID3 classifier = new ID3();
+            classifier.train(Fixtures.trainingFile("realEstate"));
+            classifier.save(model.toString());
+            byte[] saved = Files.readAllBytes(model);
+
+            // attribute counts, a leaf class, and a truncation
+            int[][] damages = {{8, -1}, {8, Integer.MAX_VALUE},
+                    {saved.length - 4, 1000}, {saved.length - 4, -5}};
+            for (int[] damage : damages) {
+                ByteBuffer bytes = ByteBuffer.wrap(saved.clone());
+                bytes.putInt(damage[0], damage[1]);
+                Files.write(model, bytes.array());
+                assertLoadFails(model);
+            }
+            Files.write(model, Arrays.copyOf(saved, saved.length / 2));
+            assertLoadFails(model);
+        } finally {
+            Files.delete(model);
+        }
+    }
+
+    private static void assertLoadFails(Path model) {
+        try {
+            ID3.load(model.toString());
+            fail("loaded a damaged model");
+        } catch (IOException e) {
+            // expected
+        }
+    }
 }
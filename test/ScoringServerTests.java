@@ -0,0 +1,169 @@
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests of the scoring service, run against a server on a free local port.
+ */
+public class ScoringServerTests {
+
+    @Test
+    public void concurrentRequestsAreClassifiedLikePredict() throws Exception {
+        ID3 classifier = new ID3();
+        classifier.train("data/realEstateTrain.csv");
+
+        List<String> lines = Files.readAllLines(
+                Paths.get("data/realEstateTest.csv"));
+        String body = String.join("\n", lines.subList(1, lines.size()));
+        String[][] examples = Fixtures.examples(
+                Fixtures.parse("data/realEstateTest.csv"));
+        String expected = String.join("\n",
+                classifier.predictLabels(examples)) + "\n";
+
+        ScoringServer server = new ScoringServer(classifier, 0, 16, 2000);
+        ExecutorService clients = Executors.newFixedThreadPool(8);
+        server.start();
+        try {
+            List<Future<String>> responses = new ArrayList<>();
+            for (int i = 0; i < 32; i++)
+                responses.add(clients.submit(() ->
+                        request(server, "POST", "/classify", body)));
+            for (Future<String> response : responses)
+                assertEquals(expected, response.get());
+
+            String stats = request(server, "GET", "/stats", null);
+            assertTrue(stats, stats.startsWith("requests 32\nexamples "
+                    + 32 * examples.length + "\n"));
+            assertTrue(server.latency(50) > 0);
+            assertTrue(server.latency(99) >= server.latency(50));
+        } finally {
+            clients.shutdown();
+            server.stop();
+        }
+    }
+
+
+    @Test
+    public void requestsAreReadLikeTrainingFiles() throws Exception {
+        ID3 classifier = new ID3();
+        classifier.train(new String[][]{
+                {"place", "note", "class"},
+                {"a,b", "", "k1"},
+                {"a,b", "say \"hi\"", "k2"},
+                {"c", "", "k3"}
+        });
+
+        ScoringServer server = new ScoringServer(classifier, 0, 16, 2000);
+        server.start();
+        try {
+            assertEquals("k1\nk2\nk3\n", request(server, "POST", "/classify",
+                    "\"a,b\",\r\n\"a,b\",\"say \"\"hi\"\"\"\r\n\r\nc,"));
+        } finally {
+            server.stop();
+        }
+    }
+
+
+    @Test
+    public void concurrentRequestsShareBatches() throws Exception {
+        ID3 classifier = new ID3();
+        classifier.train("data/realEstateTrain.csv");
+        String body = "Suburban,Detached,High,No\n";
+
+        // a 200 ms bound leaves the requests time to join the first one
+        ScoringServer server = new ScoringServer(classifier, 0, 1000,
+                200000);
+        ExecutorService clients = Executors.newFixedThreadPool(16);
+        server.start();
+        try {
+            List<Future<String>> responses = new ArrayList<>();
+            for (int i = 0; i < 16; i++)
+                responses.add(clients.submit(() ->
+                        request(server, "POST", "/classify", body)));
+            for (Future<String> response : responses)
+                assertEquals("No\n", response.get());
+
+            String[] stats = request(server, "GET", "/stats", null)
+                    .split("\n");
+            assertEquals("requests 16", stats[0]);
+            int batches = Integer.parseInt(stats[2].split(" ")[1]);
+            assertTrue(stats[2], batches >= 1 && batches < 16);
+        } finally {
+            clients.shutdown();
+            server.stop();
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void errorFailsItsBatchOnly() throws Exception {
+        ID3 classifier = new ID3() {
+            private boolean failed;
+
+            @Override
+            public String[] predictLabels(String[][] examples) {
+                if (!failed) {
+                    failed = true;
+                    throw new StackOverflowError();
+                }
+                return super.predictLabels(examples);
+            }
+        };
+        classifier.train("data/realEstateTrain.csv");
+        String body = "Suburban,Detached,High,No\n";
+
+        ScoringServer server = new ScoringServer(classifier, 0, 16, 2000);
+        server.start();
+        try {
+            assertEquals(500, send(server, "POST", "/classify", body)
+                    .getResponseCode());
+            assertEquals("No\n", request(server, "POST", "/classify", body));
+        } finally {
+            server.stop();
+        }
+    }
+
+
+    private static String request(ScoringServer server, String method,
+                                  String path, String body)
+            throws IOException {
+        HttpURLConnection connection = send(server, method, path, body);
+        assertEquals(200, connection.getResponseCode());
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (InputStream in = connection.getInputStream()) {
+            byte[] buffer = new byte[8192];
+            for (int n; (n = in.read(buffer)) > 0; )
+                bytes.write(buffer, 0, n);
+        }
+        return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static HttpURLConnection send(ScoringServer server,
+                                          String method, String path,
+                                          String body) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(
+                "http://localhost:" + server.port() + path).openConnection();
+        connection.setRequestMethod(method);
+        if (body != null) {
+            connection.setDoOutput(true);
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(body.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        return connection;
+    }
+}
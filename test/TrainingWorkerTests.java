@@ -0,0 +1,62 @@
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests of distributed training, run against workers on free local ports.
+ */
+public class TrainingWorkerTests {
+
+    @Test
+    public void distributedTrainingLearnsSameTree() throws IOException {
+        String[][] data = Fixtures.generate(20000, 8, 4, 3, 0.1, 21);
+        Path file = Files.createTempFile("id3", ".csv");
+        Fixtures.write(data, file);
+        ID3 inMemory = new ID3();
+        inMemory.train(data);
+
+        List<TrainingWorker> workers = new ArrayList<>();
+        List<InetSocketAddress> addresses = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            TrainingWorker worker = new TrainingWorker(
+                    InetAddress.getLoopbackAddress(), 0);
+            worker.start();
+            workers.add(worker);
+            addresses.add(new InetSocketAddress(
+                    InetAddress.getLoopbackAddress(), worker.port()));
+        }
+
+        try {
+            ID3 classifier = new ID3();
+            classifier.trainDistributed(file.toString(), addresses);
+            assertEquals(Fixtures.tree(inMemory), Fixtures.tree(classifier));
+
+            // counted in several requests per level, by the same workers
+            Fixtures.Recorder figures = new Fixtures.Recorder();
+            ID3 budgeted = new ID3();
+            budgeted.setOutOfCoreBudget(2000);
+            budgeted.setListener(figures);
+            budgeted.trainDistributed(file.toString(), addresses);
+            assertEquals(Fixtures.tree(inMemory), Fixtures.tree(budgeted));
+
+            long[] passes = figures.last().passesPerDepth();
+            assertTrue(Arrays.toString(passes),
+                    Arrays.stream(passes).max().getAsLong() > 1);
+            assertEquals(data.length - 1,
+                    figures.last().rowsScannedPerDepth()[0]);
+        } finally {
+            for (TrainingWorker worker : workers)
+                worker.stop();
+            Files.delete(file);
+        }
+    }
+}
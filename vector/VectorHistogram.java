@@ -0,0 +1,39 @@
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Histogram kernel on the incubating Vector API, loaded by ID3 in place of
+ * the scalar kernel when the JVM runs with the jdk.incubator.vector module
+ * ("--add-modules jdk.incubator.vector"). This source needs Java 17 or
+ * later and that module to compile, so it lives outside src, and Maven
+ * builds it only when run on such a JDK.
+ * <p>
+ * A scalar histogram increments a counter per key, and consecutive keys of
+ * a column with few values keep hitting the same counters, each increment
+ * waiting for the previous one's store. Here keys are compared a vector at
+ * a time against each cell instead, and the matching lanes counted, so the
+ * work per key falls as the vector widens and rises with the number of
+ * cells. It pays while there are fewer cells than half the lanes of a
+ * vector, as for attributes of fewer than 16 values and two classes on
+ * 512-bit vectors, or of fewer than 8 values on 256-bit ones; larger
+ * tables are counted one key at a time.
+ */
+final class VectorHistogram implements ID3.HistogramKernel {
+    private static final VectorSpecies<Byte> SPECIES =
+            ByteVector.SPECIES_PREFERRED;
+
+
+    @Override
+    public void count(byte[] keys, int n, int cells, int[] histogram,
+                      int offset) {
+        int bound = cells < SPECIES.length() / 2 ? SPECIES.loopBound(n) : 0;
+        for (int i = 0; i < bound; i += SPECIES.length()) {
+            ByteVector block = ByteVector.fromArray(SPECIES, keys, i);
+            for (int cell = 0; cell < cells; cell++)
+                histogram[offset + cell] +=
+                        block.eq((byte) cell).trueCount();
+        }
+        for (int i = bound; i < n; i++)
+            histogram[offset + keys[i]]++;
+    }
+}